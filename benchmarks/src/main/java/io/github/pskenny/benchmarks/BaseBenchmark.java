@@ -0,0 +1,41 @@
+package io.github.pskenny.benchmarks;
+
+import io.github.pskenny.luabase.LuaBaseProcessor;
+import io.github.pskenny.luabase.NaiveBaseToLuaBaseConverter;
+import io.github.pskenny.luabase.YamlBaseParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Rendering one base block over the whole vault, the block the synthetic vault's notes have
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BaseBenchmark {
+    private static final String BASE = """
+            views:
+              - type: table
+                filters:
+                  and:
+                    - file.tags.containsAny("tag-3")
+                order:
+                  - file.tags
+            """;
+
+    private Map<String, Object> spec;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        spec = new YamlBaseParser().parse(new NaiveBaseToLuaBaseConverter().convert(BASE));
+    }
+
+    // a new processor each time like BaseToMarkdownAction
+    @Benchmark
+    public String process(VaultState state) {
+        return new LuaBaseProcessor(spec).process(state.pksFiles);
+    }
+}
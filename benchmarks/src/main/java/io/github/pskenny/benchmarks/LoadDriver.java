@@ -0,0 +1,284 @@
+package io.github.pskenny.benchmarks;
+
+import io.github.pskenny.Server;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+Sends a mix of /files/list, /files/list/graph and /files/list/graph/depth/2 requests for tags picked like they're used
+in the synthetic vault, from a number of threads. After a warm up it counts the requests for the duration and prints
+the throughput and latency percentiles of each kind.
+
+By default each thread sends its next request when the last one is answered and latency is timed from when it's sent.
+That finds the most the server can answer, but while the server stalls the threads stop sending, so the requests that
+would have arrived in the meantime never wait and p99 and p99.9 come out lower than real clients would see. --rate
+sends that many requests a second between all the threads instead, each on a schedule, and times latency from when
+the request was due. A request sent late because its thread was still waiting on the last one counts the time it was
+late, like a client waiting in the server's queue would. There need to be enough threads to keep up with the rate,
+otherwise every request is late.
+
+Without --url it writes a vault of --notes notes to a temporary directory (or uses --directory) and starts a Server on
+it at --port:
+
+java -cp target/benchmarks.jar io.github.pskenny.benchmarks.LoadDriver --notes 10000 --threads 32 --duration 60
+java -cp target/benchmarks.jar io.github.pskenny.benchmarks.LoadDriver --url http://localhost:7070
+java -cp target/benchmarks.jar io.github.pskenny.benchmarks.LoadDriver --threads 64 --rate 2000
+
+--mix is the weights of the kinds, list=6,graph=3,depth2=1 by default. Searches are cached by the server, so after the
+first request for a tag it's writing the cached JSON that's measured, as it would be for a real vault.
+ */
+public class LoadDriver {
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+
+    private enum Kind {
+        LIST("list", "/files/list"),
+        GRAPH("graph", "/files/list/graph"),
+        DEPTH2("depth2", "/files/list/graph/depth/2");
+
+        private final String name;
+        private final String path;
+
+        Kind(String name, String path) {
+            this.name = name;
+            this.path = path;
+        }
+    }
+
+    // Latencies in nanoseconds, one per thread so recording doesn't contend
+    private static class Latencies {
+        private long[] nanos = new long[1024];
+        private int size;
+
+        void add(long latency) {
+            if (size == nanos.length) {
+                nanos = Arrays.copyOf(nanos, size * 2);
+            }
+            nanos[size++] = latency;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "5")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30")));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        // requests a second, 0 sends each thread's next request when the last is answered
+        double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        double[] weights = mix(options.getOrDefault("mix", "list=6,graph=3,depth2=1"));
+
+        Server server = null;
+        Path generated = null;
+        String url = options.get("url");
+        if (url == null) {
+            String directory = options.get("directory");
+            if (directory == null) {
+                SyntheticVault vault = new SyntheticVault(Integer.parseInt(options.getOrDefault("notes", "10000")), seed);
+                generated = Files.createTempDirectory("pkspkms-load");
+                vault.write(generated);
+                directory = generated.toString();
+            }
+            int port = Integer.parseInt(options.getOrDefault("port", "7071"));
+            long start = System.nanoTime();
+            server = new Server(new Server.ServerConfig(directory, Runtime.getRuntime().availableProcessors(), false,
+                    null, false, options.containsKey("virtual-threads"), Server.DEFAULT_MAX_REQUESTS,
+                    Integer.parseInt(options.getOrDefault("max-graph-requests", "0")), false));
+            server.getJavalinApp().start(port);
+            System.out.printf("Read %s and started in %d ms%n", directory, (System.nanoTime() - start) / 1_000_000);
+            url = "http://localhost:" + port;
+        }
+
+        try {
+            run(url, threads, rate, warmup, duration, seed, weights);
+        } finally {
+            if (server != null) {
+                server.getJavalinApp().stop();
+            }
+            if (generated != null) {
+                delete(generated);
+            }
+        }
+    }
+
+    private static void run(String url, int threads, double rate, Duration warmup, Duration duration, long seed,
+                            double[] weights) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long measureTo = measureFrom + duration.toNanos();
+        // with a rate, each thread's requests are due every interval, the threads' spread evenly between each other
+        long interval = rate > 0 ? (long) (threads * 1e9 / rate) : 0;
+        Kind[] kinds = Kind.values();
+        Latencies[][] latencies = new Latencies[threads][kinds.length];
+        LongAdder errors = new LongAdder();
+
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            Latencies[] threadLatencies = latencies[t];
+            for (int k = 0; k < kinds.length; k++) {
+                threadLatencies[k] = new Latencies();
+            }
+            Random random = new Random(seed + t);
+            long firstDue = rate > 0 ? start + (long) (t * 1e9 / rate) : 0;
+            Thread worker = new Thread(() -> {
+                long due = firstDue;
+                while (true) {
+                    // when the request is timed from, when it's due with a rate otherwise when it's sent
+                    long now;
+                    if (rate > 0) {
+                        if (due >= measureTo) {
+                            break;
+                        }
+                        long wait;
+                        while ((wait = due - System.nanoTime()) > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        now = due;
+                        due += interval;
+                    } else if ((now = System.nanoTime()) >= measureTo) {
+                        break;
+                    }
+                    int kind = pick(weights, random);
+                    URI uri = URI.create(url + kinds[kind].path + "?tags="
+                            + SyntheticVault.tag(SyntheticVault.randomTag(random)));
+                    try {
+                        HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(uri).GET().build(),
+                                HttpResponse.BodyHandlers.ofByteArray());
+                        long end = System.nanoTime();
+                        // with a rate, requests due at the end count however long they take, they may be the slowest
+                        if (now < measureFrom || (rate <= 0 && end > measureTo)) {
+                            continue;
+                        }
+                        if (response.statusCode() == 200) {
+                            threadLatencies[kind].add(end - now);
+                        } else {
+                            errors.increment();
+                        }
+                    } catch (IOException e) {
+                        if (now >= measureFrom) {
+                            errors.increment();
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "load-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        double seconds = duration.toNanos() / 1e9;
+        if (rate > 0) {
+            System.out.printf("%d threads sending %.1f req/s for %.0f s after %d s warm up against %s, "
+                    + "latency from when each request was due%n", threads, rate, seconds, warmup.toSeconds(), url);
+        } else {
+            System.out.printf("%d threads for %.0f s after %d s warm up against %s%n",
+                    threads, seconds, warmup.toSeconds(), url);
+        }
+        System.out.printf("%-8s %10s %10s %10s %10s %10s %10s%n",
+                "kind", "requests", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        List<long[]> all = new ArrayList<>();
+        for (int k = 0; k < kinds.length; k++) {
+            List<long[]> kindLatencies = new ArrayList<>();
+            for (Latencies[] threadLatencies : latencies) {
+                kindLatencies.add(Arrays.copyOf(threadLatencies[k].nanos, threadLatencies[k].size));
+            }
+            all.addAll(kindLatencies);
+            report(kinds[k].name, merge(kindLatencies), seconds);
+        }
+        report("all", merge(all), seconds);
+        System.out.println("errors " + errors.sum());
+    }
+
+    private static void report(String name, long[] sorted, double seconds) {
+        System.out.printf("%-8s %10d %10.1f", name, sorted.length, sorted.length / seconds);
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" %10.3f", percentile(sorted, percentile) / 1e6);
+        }
+        System.out.printf(" %10.3f%n", sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+    }
+
+    // nearest rank
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static long[] merge(List<long[]> latencies) {
+        long[] merged = latencies.stream().flatMapToLong(Arrays::stream).toArray();
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private static int pick(double[] cumulativeWeights, Random random) {
+        double pick = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        for (int kind = 0; kind < cumulativeWeights.length; kind++) {
+            if (pick < cumulativeWeights[kind]) {
+                return kind;
+            }
+        }
+        return cumulativeWeights.length - 1;
+    }
+
+    // cumulative weights in the order of Kind, from list=6,graph=3,depth2=1
+    private static double[] mix(String mix) {
+        double[] weights = new double[Kind.values().length];
+        for (String part : mix.split(",")) {
+            String[] nameWeight = part.split("=");
+            Kind kind = Arrays.stream(Kind.values())
+                    .filter(k -> k.name.equals(nameWeight[0].trim()))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Not a kind of request: " + nameWeight[0]));
+            weights[kind.ordinal()] = Double.parseDouble(nameWeight[1].trim());
+        }
+        for (int kind = 1; kind < weights.length; kind++) {
+            weights[kind] += weights[kind - 1];
+        }
+        if (weights[weights.length - 1] <= 0) {
+            throw new IllegalArgumentException("The mix has no weights: " + mix);
+        }
+        return weights;
+    }
+
+    // --name value pairs, or --name on its own for a flag
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Not an option: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(name, args[++i]);
+            } else {
+                options.put(name, "true");
+            }
+        }
+        return options;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (var paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
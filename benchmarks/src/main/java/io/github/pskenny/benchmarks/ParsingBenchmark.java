@@ -0,0 +1,64 @@
+package io.github.pskenny.benchmarks;
+
+import io.github.pskenny.io.PksFile;
+import io.github.pskenny.io.parser.actions.WikilinkToMarkdownLinkAction;
+import io.github.pskenny.io.parser.markdown.MarkdownLinkReader;
+import io.github.pskenny.io.parser.markdown.YamlFrontmatterReader;
+import io.github.pskenny.repo.WikilinkResolver;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Reading one note at a time, going round every note in the vault
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark {
+    private final YamlFrontmatterReader frontmatterReader = new YamlFrontmatterReader();
+    private final MarkdownLinkReader markdownLinkReader = new MarkdownLinkReader();
+    private final WikilinkResolver wikilinkResolver = new WikilinkResolver();
+    private String[] paths;
+    private String[] contents;
+    private int note = 0;
+
+    @Setup(Level.Trial)
+    public void setUp(VaultState state) {
+        paths = new String[state.vault.size()];
+        contents = new String[state.vault.size()];
+        for (int i = 0; i < contents.length; i++) {
+            paths[i] = state.vault.path(i);
+            contents[i] = state.vault.content(i);
+        }
+        wikilinkResolver.initialise(state.pksFiles);
+    }
+
+    @Benchmark
+    public Map<String, Object> frontmatter() {
+        return frontmatterReader.getFrontMatterProperties(contents[nextNote()]);
+    }
+
+    @Benchmark
+    public List<String> markdownLinks() {
+        return markdownLinkReader.getMarkdownLinksProperties(contents[nextNote()]);
+    }
+
+    // a new file each time, the action changes the file's content
+    @Benchmark
+    public Set<String> wikilinksToMarkdownLinks() {
+        int current = nextNote();
+        PksFile pksFile = new PksFile(paths[current], new HashMap<>(Map.of("content", contents[current])));
+        return new WikilinkToMarkdownLinkAction().act(pksFile, wikilinkResolver);
+    }
+
+    private int nextNote() {
+        note = note + 1 == contents.length ? 0 : note + 1;
+        return note;
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.pskenny.benchmarks;
+
+import io.github.pskenny.io.JsonUtil;
+import io.github.pskenny.io.PksFile;
+import io.github.pskenny.io.Projection;
+import io.github.pskenny.io.Query;
+import io.github.pskenny.io.Search;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// One query over the whole vault: checking every file, the repository's indexes, and writing the matches as JSON
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+    @Param({"tags=tag-3", "status=done&priority=>3", "tags=tag-1*&!status=dropped", "created=>2024-01-01"})
+    public String query;
+
+    private Query compiled;
+    private Collection<PksFile> matched;
+
+    @Setup(Level.Trial)
+    public void setUp(VaultState state) {
+        compiled = Query.compile(query);
+        matched = state.repository.search(compiled, Projection.WITHOUT_CONTENT).values();
+    }
+
+    @Benchmark
+    public int scan(VaultState state) {
+        int count = 0;
+        for (PksFile pksFile : state.pksFiles.values()) {
+            if (Search.matchesProperties(pksFile, query)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public Map<String, PksFile> repositorySearch(VaultState state) {
+        return state.repository.search(compiled, Projection.WITHOUT_CONTENT);
+    }
+
+    @Benchmark
+    public void writeJson() throws IOException {
+        JsonUtil.writePksFiles(matched, OutputStream.nullOutputStream());
+    }
+}
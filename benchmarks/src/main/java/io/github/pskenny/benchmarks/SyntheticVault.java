@@ -0,0 +1,167 @@
+package io.github.pskenny.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+A vault of made-up notes, the same every time for the same size and seed. Notes are spread over folders and have
+frontmatter (title, tags, status, priority, created, sometimes aliases, done, rating and a source), paragraphs with
+markdown links and wikilinks (by file name and by alias) to other notes, and every BASE_EVERY-th note has a base block
+listing the notes with one of its tags. Every ATTACHMENT_EVERY-th note embeds an attachment, which are written too.
+
+Tags are used like people use them, a few on lots of notes and most on a few: tag-0 is the most common, tag-k is on
+about 1 / (k + 1) as many notes.
+ */
+public class SyntheticVault {
+    public static final int FOLDERS = 20;
+    public static final int TAGS = 200;
+    public static final int BASE_EVERY = 100;
+    public static final int ATTACHMENT_EVERY = 10;
+    public static final int ALIAS_EVERY = 7;
+    private static final String ATTACHMENTS = "attachments";
+    private static final String[] STATUSES = {"todo", "doing", "done", "dropped"};
+    private static final String[] TYPES = {"note", "book", "article", "meeting", "project", "person"};
+    private static final String[] WORDS = {"graph", "note", "idea", "link", "project", "reading", "draft", "review",
+            "meeting", "index", "summary", "question", "answer", "source", "quote", "task"};
+    private static final LocalDate FIRST_DATE = LocalDate.of(2020, 1, 1);
+    // cumulative weights of the tags, searched for a random number to pick one
+    private static final double[] TAG_WEIGHTS = new double[TAGS];
+
+    static {
+        double total = 0;
+        for (int tag = 0; tag < TAGS; tag++) {
+            total += 1.0 / (tag + 1);
+            TAG_WEIGHTS[tag] = total;
+        }
+    }
+
+    private final int notes;
+    private final long seed;
+
+    public SyntheticVault(int notes, long seed) {
+        this.notes = notes;
+        this.seed = seed;
+    }
+
+    public int size() {
+        return notes;
+    }
+
+    // relative to the vault's directory
+    public String path(int note) {
+        return folder(note) + "/note-" + note + ".md";
+    }
+
+    public int attachments() {
+        return (notes + ATTACHMENT_EVERY - 1) / ATTACHMENT_EVERY;
+    }
+
+    public String attachmentPath(int attachment) {
+        return ATTACHMENTS + "/image-" + attachment + ".png";
+    }
+
+    public String content(int note) {
+        Random random = new Random(seed * 31 + note);
+        StringBuilder content = new StringBuilder(2048);
+        content.append("---\n")
+                .append("title: Note ").append(note).append('\n')
+                .append("type: ").append(TYPES[random.nextInt(TYPES.length)]).append('\n')
+                .append("tags:\n");
+        int tagCount = 1 + random.nextInt(4);
+        for (int i = 0; i < tagCount; i++) {
+            content.append("  - ").append(tag(randomTag(random))).append('\n');
+        }
+        if (note % ALIAS_EVERY == 0) {
+            content.append("aliases:\n  - ").append(alias(note)).append('\n');
+        }
+        content.append("status: ").append(STATUSES[random.nextInt(STATUSES.length)]).append('\n')
+                .append("priority: ").append(1 + random.nextInt(5)).append('\n')
+                .append("created: ").append(FIRST_DATE.plusDays(random.nextInt(2000))).append('\n');
+        if (random.nextBoolean()) {
+            content.append("done: ").append(random.nextBoolean()).append('\n');
+        }
+        if (random.nextInt(4) == 0) {
+            content.append("rating: ").append(random.nextInt(10) / 2.0).append('\n')
+                    .append("source: https://example.com/").append(note).append('\n');
+        }
+        content.append("---\n\n")
+                .append("# Note ").append(note).append("\n\n");
+
+        int paragraphs = 2 + random.nextInt(4);
+        for (int paragraph = 0; paragraph < paragraphs; paragraph++) {
+            int words = 30 + random.nextInt(60);
+            for (int word = 0; word < words; word++) {
+                content.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                if (random.nextInt(20) == 0) {
+                    content.append(link(random.nextInt(notes), random)).append(' ');
+                }
+            }
+            content.append("\n\n");
+        }
+
+        if (note % ATTACHMENT_EVERY == 0) {
+            content.append("![diagram](../").append(attachmentPath(note / ATTACHMENT_EVERY)).append(")\n\n");
+        }
+        if (note % BASE_EVERY == 0) {
+            content.append("```base\n")
+                    .append("views:\n")
+                    .append("  - type: table\n")
+                    .append("    filters:\n")
+                    .append("      and:\n")
+                    .append("        - file.tags.containsAny(\"").append(tag(randomTag(random))).append("\")\n")
+                    .append("    order:\n")
+                    .append("      - file.tags\n")
+                    .append("```\n");
+        }
+        return content.toString();
+    }
+
+    // Writes every note and attachment under the directory
+    public void write(Path directory) throws IOException {
+        for (int folder = 0; folder < Math.min(FOLDERS, notes); folder++) {
+            Files.createDirectories(directory.resolve("area-" + folder));
+        }
+        for (int note = 0; note < notes; note++) {
+            Files.writeString(directory.resolve(path(note)), content(note));
+        }
+        Files.createDirectories(directory.resolve(ATTACHMENTS));
+        for (int attachment = 0; attachment < attachments(); attachment++) {
+            byte[] bytes = new byte[1024 + attachment % 4096];
+            new Random(seed * 17 + attachment).nextBytes(bytes);
+            Files.write(directory.resolve(attachmentPath(attachment)), bytes);
+        }
+    }
+
+    public static String tag(int tag) {
+        return "tag-" + tag;
+    }
+
+    // A tag picked as often as it's on notes
+    public static int randomTag(Random random) {
+        int tag = Arrays.binarySearch(TAG_WEIGHTS, random.nextDouble() * TAG_WEIGHTS[TAGS - 1]);
+        return tag >= 0 ? tag : Math.min(-tag - 1, TAGS - 1);
+    }
+
+    private static String alias(int note) {
+        return "Alias " + note;
+    }
+
+    private static String folder(int note) {
+        return "area-" + (note % FOLDERS);
+    }
+
+    // links are written the ways people write them: relative, from the top of the vault and as wikilinks
+    private String link(int to, Random random) {
+        return switch (random.nextInt(5)) {
+            case 0 -> "[note " + to + "](../" + path(to) + ")";
+            case 1 -> "[note " + to + "](" + path(to) + ")";
+            case 2 -> "[[note-" + to + "]]";
+            case 3 -> to % ALIAS_EVERY == 0 ? "[[" + alias(to) + "]]" : "[[note-" + to + "]]";
+            default -> "[[note-" + to + "|Note " + to + "]]";
+        };
+    }
+}
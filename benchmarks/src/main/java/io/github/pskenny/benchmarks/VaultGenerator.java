@@ -0,0 +1,28 @@
+package io.github.pskenny.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+Writes a synthetic vault to a directory to point the server or the load driver at:
+
+java -cp target/benchmarks.jar io.github.pskenny.benchmarks.VaultGenerator <directory> [notes] [seed]
+ */
+public class VaultGenerator {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: VaultGenerator <directory> [notes] [seed]");
+            System.exit(1);
+        }
+        Path directory = Path.of(args[0]);
+        int notes = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+
+        Files.createDirectories(directory);
+        SyntheticVault vault = new SyntheticVault(notes, seed);
+        vault.write(directory);
+        System.out.println("Wrote " + vault.size() + " notes and " + vault.attachments() + " attachments to "
+                + directory.toAbsolutePath());
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.pskenny.benchmarks;
+
+import io.github.pskenny.io.PksFile;
+import io.github.pskenny.repo.InMemoryFileRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/*
+A synthetic vault written to a temporary directory and read into a repository once per trial. The size is the notes
+parameter, e.g. -p notes=1000,10000.
+ */
+@State(Scope.Benchmark)
+public class VaultState {
+    @Param({"1000"})
+    public int notes;
+
+    public SyntheticVault vault;
+    public Path directory;
+    public InMemoryFileRepository repository;
+    public Map<String, PksFile> pksFiles;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        vault = new SyntheticVault(notes, 42);
+        directory = Files.createTempDirectory("pkspkms-vault");
+        vault.write(directory);
+        repository = new InMemoryFileRepository(directory.toString());
+        pksFiles = repository.getAllPksFiles();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
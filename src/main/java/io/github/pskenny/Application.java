@@ -1,5 +1,6 @@
 package io.github.pskenny;
 
+import io.github.pskenny.repo.SnapshotStore;
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
@@ -22,10 +23,20 @@ public class Application {
         String command = ns.getString("command");
         switch(command) {
             case "server":
-                String directory = ns.getString("directory");
                 int port = ns.getInt("port");
+                Server.ServerConfig serverConfig = new Server.ServerConfig(
+                        ns.getString("directory"),
+                        ns.getInt("parallelism"),
+                        ns.getBoolean("load"),
+                        ns.getString("snapshot"),
+                        ns.getBoolean("watch"),
+                        ns.getBoolean("virtual_threads"),
+                        ns.getInt("max_requests"),
+                        ns.getInt("max_graph_requests"),
+                        ns.getBoolean("profile_startup")
+                    );
 
-                new Server(directory).getJavalinApp()
+                new Server(serverConfig).getJavalinApp()
                         .start(port);
                 break;
             case "export":
@@ -38,7 +49,10 @@ public class Application {
                         ns.getString("options"),
                         ns.getInt("depth"),
                         ns.getBoolean("dryrun"),
-                        ns.getBoolean("load")
+                        ns.getBoolean("load"),
+                        ns.getString("snapshot"),
+                        ns.getInt("parallelism"),
+                        ns.getBoolean("profile_startup")
                     );
 
                 new Export(exportConfig)
@@ -79,6 +93,31 @@ public class Application {
                 .type(String.class)
                 .required(true)
                 .help("Directory to serve");
+        serverParser.addArgument("--load")
+                .action(Arguments.storeTrue())
+                .setDefault(Boolean.FALSE)
+                .help("Load data from previously saved (serialised) files instead of regenerating.");
+        addSnapshotArgument(serverParser);
+        addParallelismArgument(serverParser);
+        addProfileStartupArgument(serverParser);
+        serverParser.addArgument("--watch")
+                .action(Arguments.storeTrue())
+                .setDefault(Boolean.FALSE)
+                .help("Watch the directory and update when files change.");
+        serverParser.addArgument("--virtual-threads")
+                .action(Arguments.storeTrue())
+                .setDefault(Boolean.FALSE)
+                .help("Handle requests on virtual threads (Java 21 or later).");
+        serverParser.addArgument("--max-requests")
+                .type(Integer.class)
+                .choices(Arguments.range(1, Integer.MAX_VALUE))
+                .setDefault(Server.DEFAULT_MAX_REQUESTS)
+                .help("Number of list, metrics and profile requests handled at once, more wait for a turn");
+        serverParser.addArgument("--max-graph-requests")
+                .type(Integer.class)
+                .choices(Arguments.range(1, Integer.MAX_VALUE))
+                .setDefault(Runtime.getRuntime().availableProcessors())
+                .help("Number of graph requests handled at once, more are turned away (default: the number of processors)");
     }
 
     private void addExportSubparser(Subparsers subparsers) {
@@ -121,5 +160,28 @@ public class Application {
                 .action(Arguments.storeTrue())
                 .setDefault(Boolean.FALSE)
                 .help("Load data from previously saved (serialised) files instead of regenerating.");
+        addSnapshotArgument(exportParser);
+        addParallelismArgument(exportParser);
+        addProfileStartupArgument(exportParser);
+    }
+
+    private void addSnapshotArgument(ArgumentParser parser) {
+        parser.addArgument("--snapshot")
+                .type(String.class)
+                .help("Path of the saved data used by --load (default: " + SnapshotStore.DEFAULT_LOCATION + " in the directory)");
+    }
+
+    private void addParallelismArgument(ArgumentParser parser) {
+        parser.addArgument("--parallelism")
+                .type(Integer.class)
+                .setDefault(1)
+                .help("Number of threads used to read the directory (0 uses all available processors)");
+    }
+
+    private void addProfileStartupArgument(ArgumentParser parser) {
+        parser.addArgument("--profile-startup")
+                .action(Arguments.storeTrue())
+                .setDefault(Boolean.FALSE)
+                .help("Print how long each phase of reading the directory took and the slowest files.");
     }
 }
@@ -1,10 +1,14 @@
 package io.github.pskenny;
 
 import io.github.pskenny.io.PksFile;
+import io.github.pskenny.metrics.Metrics;
+import io.github.pskenny.metrics.StartupProfile;
 import io.github.pskenny.repo.InMemoryFileRepository;
+import io.github.pskenny.repo.SnapshotStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
 import java.util.Map;
 
 import static io.github.pskenny.io.FileUtil.*;
@@ -17,7 +21,12 @@ public class Export {
 
     public Export(ExportConfig config) {
         this.config = config;
-        this.inMemoryFileRepository = new InMemoryFileRepository(config.directory());
+        Path snapshot = config.load() ? SnapshotStore.resolvePath(config.directory(), config.snapshot()) : null;
+        this.inMemoryFileRepository = new InMemoryFileRepository(config.directory(), config.parallelism(), snapshot,
+                new Metrics(), config.profileStartup());
+        if (config.profileStartup()) {
+            System.out.print(inMemoryFileRepository.getStartupProfile().format(StartupProfile.DEFAULT_SLOWEST));
+        }
     }
 
     public void export() {
@@ -56,5 +65,5 @@ public class Export {
         });
     }
 
-    public record ExportConfig(String directory, String query, String output, String type, String sqliteDb, String options, int depth, boolean dryRun, boolean load){}
+    public record ExportConfig(String directory, String query, String output, String type, String sqliteDb, String options, int depth, boolean dryRun, boolean load, String snapshot, int parallelism, boolean profileStartup){}
 }
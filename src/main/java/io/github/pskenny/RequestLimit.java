@@ -0,0 +1,38 @@
+package io.github.pskenny;
+
+import io.javalin.http.Handler;
+import io.javalin.http.Header;
+import io.javalin.http.ServiceUnavailableResponse;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+How many requests of one kind are handled at once. Routes share a limit with routes that cost about the same, so slow
+graph requests can't hold every thread (or, on virtual threads, every processor) while lists wait behind them. A
+request over the limit waits up to waitMillis for another to finish (0 doesn't wait) and then gets a 503 to try again.
+ */
+class RequestLimit {
+    private final Semaphore permits;
+    private final long waitMillis;
+
+    RequestLimit(int maxRequests, long waitMillis) {
+        this.permits = new Semaphore(maxRequests);
+        this.waitMillis = waitMillis;
+    }
+
+    // The handler, only run while there are fewer than the limit running
+    Handler limit(Handler handler) {
+        return ctx -> {
+            if (!permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                ctx.header(Header.RETRY_AFTER, "1");
+                throw new ServiceUnavailableResponse("Too many requests, try again");
+            }
+            try {
+                handler.handle(ctx);
+            } finally {
+                permits.release();
+            }
+        };
+    }
+}
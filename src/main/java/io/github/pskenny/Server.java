@@ -2,122 +2,312 @@ package io.github.pskenny;
 
 import io.github.pskenny.io.JsonUtil;
 import io.github.pskenny.io.PksFile;
+import io.github.pskenny.io.Projection;
+import io.github.pskenny.io.Query;
+import io.github.pskenny.metrics.Metrics;
+import io.github.pskenny.metrics.StartupProfile;
+import io.github.pskenny.repo.Cursor;
+import io.github.pskenny.repo.DirectoryWatcher;
 import io.github.pskenny.repo.InMemoryFileRepository;
+import io.github.pskenny.repo.RepositorySnapshot;
+import io.github.pskenny.repo.ResultCache;
+import io.github.pskenny.repo.SnapshotStore;
 import io.javalin.Javalin;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+import io.javalin.http.GoneResponse;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
 import io.javalin.plugin.bundled.CorsPluginConfig;
+import io.javalin.util.ConcurrencyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 public class Server {
+    private static final Logger logger = LoggerFactory.getLogger(Server.class);
+    private static final long WATCH_DEBOUNCE_MILLIS = 200;
+    private static final int RESULT_CACHE_ENTRIES = 256;
+    private static final long RESULT_CACHE_BYTES = 64L * 1024 * 1024;
+    // page through /files/list instead of being searched for
+    private static final List<String> PAGE_PARAMETERS = List.of("limit", "cursor", "sort");
+    public static final int DEFAULT_MAX_REQUESTS = 256;
+    // how long a list waits for another to finish when there's the most running already. Graphs don't wait, on
+    // platform threads every graph waiting would hold a thread the cheap routes need.
+    private static final long REQUEST_WAIT_MILLIS = 5000;
+    private static final long GRAPH_REQUEST_WAIT_MILLIS = 0;
+    private static final String METRICS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
     private final InMemoryFileRepository inMemoryFileRepository;
+    // this server's and its repository's, nothing else records to them
+    private final Metrics metrics = new Metrics();
+    private final ResultCache resultCache = new ResultCache(RESULT_CACHE_ENTRIES, RESULT_CACHE_BYTES);
+    // generations start again with a new server, ETags from an old one mustn't match
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
     private Javalin app;
 
     public Server(String directory) {
-        inMemoryFileRepository = new InMemoryFileRepository(directory);
+        this(new ServerConfig(directory, 1, false, null, false, false, DEFAULT_MAX_REQUESTS, 0, false));
+    }
+
+    public Server(ServerConfig serverConfig) {
+        Path snapshot = serverConfig.load()
+                ? SnapshotStore.resolvePath(serverConfig.directory(), serverConfig.snapshot())
+                : null;
+        inMemoryFileRepository = new InMemoryFileRepository(serverConfig.directory(), serverConfig.parallelism(), snapshot,
+                metrics, serverConfig.profileStartup());
+        if (serverConfig.profileStartup()) {
+            System.out.print(inMemoryFileRepository.getStartupProfile().format(StartupProfile.DEFAULT_SLOWEST));
+        }
+        DirectoryWatcher directoryWatcher = serverConfig.watch() ? createDirectoryWatcher(serverConfig.directory()) : null;
         app = Javalin.create(config -> {
 //            config.bundledPlugins.enableDevLogging();
             config.showJavalinBanner = false;
+            if (serverConfig.virtualThreads()) {
+                if (ConcurrencyUtil.isLoomAvailable()) {
+                    config.useVirtualThreads = true;
+                } else {
+                    logger.warn("Virtual threads need Java 21 or later, handling requests on platform threads");
+                }
+            }
+            if (directoryWatcher != null) {
+                config.events(events -> {
+                    events.serverStarted(directoryWatcher::start);
+                    events.serverStopped(directoryWatcher::close);
+                });
+            }
             config.bundledPlugins.enableCors(cors -> {
                 cors.addRule(CorsPluginConfig.CorsRule::anyHost);
             });
+            config.requestLogger.http((ctx, executionMillis) -> {
+                metrics.timer("pkspkms_http_request_duration_seconds", "Time to handle a request",
+                        "route", route(ctx)).observe(executionMillis / 1000);
+                metrics.counter("pkspkms_http_requests_total", "Requests handled",
+                        "route", route(ctx), "status", Integer.toString(ctx.statusCode())).increment();
+            });
         });
+        registerFileGauges();
+
+        // lists and pages only read the files they return, graphs read around them and can be far bigger
+        RequestLimit requests = new RequestLimit(serverConfig.maxRequests(), REQUEST_WAIT_MILLIS);
+        int maxGraphRequests = serverConfig.maxGraphRequests() < 1
+                ? Runtime.getRuntime().availableProcessors()
+                : serverConfig.maxGraphRequests();
+        RequestLimit graphRequests = new RequestLimit(maxGraphRequests, GRAPH_REQUEST_WAIT_MILLIS);
 
+        // not limited, the server is up even when it's busy
         app.get("/ping", ctx -> ctx.status(200));
 
-        app.get("/files/list", ctx -> {
-            Map<String, PksFile> matchedFiles = inMemoryFileRepository.search(ctx.queryParamMap());
-            matchedFiles.values().forEach(pksFile -> pksFile.filterProperties(List.of(), List.of("content")));
-            ctx.json(JsonUtil.pksFilesToJson(matchedFiles.values()));
-            ctx.status(200);
-        });
+        app.get("/metrics", requests.limit(ctx -> {
+            StringWriter text = new StringWriter();
+            metrics.write(text);
+            ctx.contentType(METRICS_CONTENT_TYPE);
+            ctx.result(text.toString());
+        }));
 
-        app.get("/files/list/graph", ctx -> {
-            Map<String, PksFile> matchedFiles = inMemoryFileRepository.search(ctx.queryParamMap());
-            matchedFiles.values().forEach(pksFile ->
-                    pksFile.filterProperties(List.of("links", "backlinks", "tags", "filePath"), List.of()));
+        // where reading the directory spent its time, with the slowest files to parse and transform
+        app.get("/profile/startup", requests.limit(ctx -> {
+            int slowest = ctx.queryParamAsClass("slowest", Integer.class)
+                    .check(value -> value >= 0, "slowest can't be less than 0")
+                    .getOrDefault(StartupProfile.DEFAULT_SLOWEST);
+            ctx.contentType(ContentType.APPLICATION_JSON);
+            ctx.result(JsonUtil.toJson(inMemoryFileRepository.getStartupProfile().report(slowest)));
+        }));
 
-            ctx.json(JsonUtil.pksFilesToJson(matchedFiles.values()));
-            ctx.status(200);
-        });
+        app.get("/files/list", requests.limit(ctx -> {
+            Map<String, List<String>> params = new HashMap<>(ctx.queryParamMap());
+            params.keySet().removeAll(PAGE_PARAMETERS);
+            Query query = Query.compile(params);
+            if (params.size() < ctx.queryParamMap().size()) {
+                page(ctx, query, Projection.WITHOUT_CONTENT);
+            } else {
+                json(ctx, inMemoryFileRepository.snapshot(),
+                        new ResultCache.Key(query.key(), Projection.WITHOUT_CONTENT, 1),
+                        (files, out) -> JsonUtil.writePksFiles(list(files, query, Projection.WITHOUT_CONTENT), out));
+            }
+        }));
 
-        app.get("/files/list/graph/depth/2", ctx -> {
-            Map<String, PksFile> matchedFiles = inMemoryFileRepository.search(ctx.queryParamMap());
+        app.get("/files/list/graph", graphRequests.limit(ctx -> {
+            Query query = Query.compile(ctx.queryParamMap());
+            json(ctx, inMemoryFileRepository.snapshot(), new ResultCache.Key(query.key(), Projection.GRAPH, 1),
+                    (files, out) -> JsonUtil.writePksFiles(list(files, query, Projection.GRAPH), out));
+        }));
 
-            Set<String> linkedFilePaths = new HashSet<>();
-            Set<String> allLinkedTags = new HashSet<>();
+        app.get("/files/list/graph/depth/{depth}", graphRequests.limit(ctx -> {
+            int depth = ctx.pathParamAsClass("depth", Integer.class)
+                    .check(value -> value > 0, "depth has to be more than 0")
+                    .get();
+            int maxNodes = ctx.queryParamAsClass("maxNodes", Integer.class)
+                    .check(value -> value > 0, "maxNodes has to be more than 0")
+                    .getOrDefault(Integer.MAX_VALUE);
+            Map<String, List<String>> params = new HashMap<>(ctx.queryParamMap());
+            params.remove("maxNodes");
+            Query query = Query.compile(params);
+            json(ctx, inMemoryFileRepository.snapshot(),
+                    new ResultCache.Key(query.key() + "\0maxNodes\0" + maxNodes, Projection.GRAPH, depth),
+                    (files, out) -> JsonUtil.writeNeighbourhood(
+                            files.neighbourhood(query, depth, maxNodes, Projection.GRAPH), out));
+        }));
+    }
 
-            matchedFiles.values().forEach(pksFile -> {
-                if (pksFile.getProperties().containsKey("links")) {
-                    linkedFilePaths.addAll((Collection<? extends String>) pksFile.getProperties().get("links"));
-                }
-                if (pksFile.getProperties().containsKey("backlinks")) {
-                    linkedFilePaths.addAll((Collection<? extends String>) pksFile.getProperties().get("backlinks"));
-                }
-                if (pksFile.getProperties().containsKey("tags") && pksFile.getProperties().get("tags") != null) {
-                    if (pksFile.getProperties().get("tags") instanceof String) {
-                        allLinkedTags.add(pksFile.getProperties().get("tags").toString());
-                    } else {
-                        allLinkedTags.addAll((Collection<? extends String>) pksFile.getProperties().get("tags"));
-                    }
-                }
-            });
+    // A page of the files in id order, sort=-id for newest first. The response has a cursor for the next page unless
+    // it's the last one, which stops working once the files change.
+    private void page(Context ctx, Query query, Projection projection) throws IOException {
+        int limit = ctx.queryParamAsClass("limit", Integer.class)
+                .check(value -> value > 0, "limit has to be more than 0")
+                .getOrDefault(Integer.MAX_VALUE);
+        String sort = ctx.queryParamAsClass("sort", String.class)
+                .check(value -> value.equals("id") || value.equals("-id"), "sort has to be id or -id")
+                .getOrDefault("id");
+        String cursorParam = ctx.queryParam("cursor");
+        // the cursor is checked against the files the page is read from
+        RepositorySnapshot snapshot = inMemoryFileRepository.snapshot();
+        Cursor cursor = null;
+        if (cursorParam != null) {
+            try {
+                cursor = Cursor.decode(cursorParam);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestResponse("Not a cursor: " + cursorParam);
+            }
+            if (cursor.generation() != snapshot.generation()) {
+                throw new GoneResponse("The files have changed since the cursor was made, start from the first page");
+            }
+        }
 
-            // Remove any files already in the matched files
-            linkedFilePaths.removeIf((obj) ->
-                matchedFiles.containsKey(obj) || matchedFiles.containsKey("/" + obj)
-            );
-            Map<String, PksFile> depth1PksFiles = getPksFileMapByPath(linkedFilePaths);
+        Cursor after = cursor;
+        String pageKey = query.key() + "\0sort\0" + sort + "\0limit\0" + limit + "\0cursor\0" + cursorParam;
+        json(ctx, snapshot, new ResultCache.Key(pageKey, projection, 1), (files, out) -> JsonUtil.writePage(
+                files.page(query, projection, after, limit, sort.equals("-id")), out));
+    }
 
-            depth1PksFiles.forEach((path, pksFile) -> {
-                if (pksFile.getProperties().containsKey("tags") && pksFile.getProperties().get("tags") != null) {
-                    allLinkedTags.addAll((Collection<? extends String>) pksFile.getProperties().get("tags"));
-                }
-            });
+    /*
+    Responds with the cached JSON for the key. If the files have changed since, the response is streamed as it's
+    serialised and the written bytes are cached.
+
+    The ETag is this server's start, the repository generation and the key, so a client revalidating a response with
+    If-None-Match (or If-Modified-Since) gets a 304 without anything being searched while the files haven't changed.
+    Everything is from the one snapshot, an update while the response is written doesn't change what's in it.
+     */
+    private void json(Context ctx, RepositorySnapshot snapshot, ResultCache.Key key, JsonRender render)
+            throws IOException {
+        long generation = snapshot.generation();
+        // in whole seconds like HTTP dates, and later for every generation
+        long lastModified = snapshot.lastModified();
+        String etag = "\"" + epoch + "-" + generation + "-" + Integer.toHexString(key.hashCode()) + "\"";
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.LAST_MODIFIED, HTTP_DATE.format(Instant.ofEpochMilli(lastModified)));
+        ctx.header(Header.CACHE_CONTROL, "no-cache");
+        if (notModified(ctx, etag, lastModified)) {
+            countResponse(ctx, "not_modified");
+            ctx.status(HttpStatus.NOT_MODIFIED);
+            return;
+        }
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        ctx.status(200);
 
-            Map<String, PksFile> taggedFiles = new HashMap<>();
-            if (!allLinkedTags.isEmpty()) {
-                // get every file with every tag
-                for (String tag : allLinkedTags) {
-                    Map<String, PksFile> matchedTagFiles = inMemoryFileRepository.search("tags=" + tag);
-                    taggedFiles.putAll(matchedTagFiles);
+        byte[] cached = resultCache.get(key, generation);
+        if (cached != null) {
+            countResponse(ctx, "cached");
+            ctx.result(cached);
+            return;
+        }
+        countResponse(ctx, "searched");
+        ResultCache.Recorder recorder = resultCache.recorder(ctx.outputStream());
+        render.write(snapshot, recorder);
+        byte[] json = recorder.recorded();
+        if (json != null) {
+            resultCache.put(key, generation, json);
+        }
+    }
+
+    private static boolean notModified(Context ctx, String etag, long lastModified) {
+        String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String match : ifNoneMatch.split(",")) {
+                String tag = match.trim();
+                if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                    return true;
                 }
             }
+            return false;
+        }
+        String ifModifiedSince = ctx.header(Header.IF_MODIFIED_SINCE);
+        if (ifModifiedSince != null) {
+            try {
+                return Instant.from(HTTP_DATE.parse(ifModifiedSince)).toEpochMilli() >= lastModified;
+            } catch (DateTimeException e) {
+                return false;
+            }
+        }
+        return false;
+    }
 
-            Map<String, PksFile> allPksFiles = new HashMap<>();
-            allPksFiles.putAll(matchedFiles);
-            allPksFiles.putAll(depth1PksFiles);
-            allPksFiles.putAll(taggedFiles);
-
-            Set<PksFile> filesToReturn = new HashSet<>();
-            allPksFiles.forEach((path, pksFile) -> {
-                // only have filePath, links, backlinks and tags properties
-                pksFile.filterProperties(List.of("links", "backlinks", "tags", "filePath"), List.of());
-                filesToReturn.add(pksFile);
-            });
+    // how a search was answered, searched responses are the cache misses
+    private void countResponse(Context ctx, String result) {
+        metrics.counter("pkspkms_search_responses_total", "Search responses by how they were answered",
+                "route", route(ctx), "result", result).increment();
+    }
 
-            ctx.json(JsonUtil.pksFilesToJson(filesToReturn));
-            ctx.status(200);
-        });
+    // The files the latest snapshot has, read when the metrics are
+    private void registerFileGauges() {
+        metrics.gauge("pkspkms_files", "Files in the repository")
+                .setSupplier(() -> inMemoryFileRepository.snapshot().size());
+        metrics.gauge("pkspkms_tags", "Distinct tags in the repository")
+                .setSupplier(() -> inMemoryFileRepository.snapshot().tagCount());
+        metrics.gauge("pkspkms_paths", "Paths given ids, files and link targets")
+                .setSupplier(() -> inMemoryFileRepository.snapshot().pathCount());
+        metrics.gauge("pkspkms_generation", "Updates since the repository was read")
+                .setSupplier(() -> inMemoryFileRepository.snapshot().generation());
     }
 
-    private Map<String, PksFile> getPksFileMapByPath(Set<String> paths) {
-        Map<String, PksFile> files = new HashMap<>();
+    // the route's path as it's declared, so every file's request counts to the same route
+    private static String route(Context ctx) {
+        String route = ctx.endpointHandlerPath();
+        return route.isEmpty() ? "unmatched" : route;
+    }
 
-        var allPksFiles = inMemoryFileRepository.getAllPksFiles();
+    private interface JsonRender {
+        void write(RepositorySnapshot files, OutputStream out) throws IOException;
+    }
 
-        paths.forEach(path -> {
-            if (allPksFiles.containsKey(path)) {
-                files.put(path, allPksFiles.get(path));
-            } else if (allPksFiles.containsKey("/" + path)) {
-                files.put("/" + path, allPksFiles.get("/" + path));
-            }
-        });
+    private static Collection<PksFile> list(RepositorySnapshot files, Query query, Projection projection) {
+        return files.search(query, projection).values();
+    }
 
-        return files;
+    private DirectoryWatcher createDirectoryWatcher(String directory) {
+        try {
+            return new DirectoryWatcher(inMemoryFileRepository, directory, WATCH_DEBOUNCE_MILLIS);
+        } catch (IOException e) {
+            logger.error("Couldn't watch directory {}: {}", directory, e.getMessage());
+            return null;
+        }
     }
 
     // for testing
     public Javalin getJavalinApp() {
         return app;
     }
+
+    // for testing
+    InMemoryFileRepository getRepository() {
+        return inMemoryFileRepository;
+    }
+
+    // maxGraphRequests less than 1 is the number of processors, profileStartup prints the startup profile
+    // and keeps what each file cost in it
+    public record ServerConfig(String directory, int parallelism, boolean load, String snapshot, boolean watch,
+                               boolean virtualThreads, int maxRequests, int maxGraphRequests,
+                               boolean profileStartup){}
 }
@@ -1,27 +1,88 @@
 package io.github.pskenny.io;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import io.github.pskenny.repo.Neighbourhood;
+import io.github.pskenny.repo.Page;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class JsonUtil {
-    public static String pksFilesToJson(Collection<PksFile> files) {
-        Set<Map<String, Object>> filesProperties = files.stream()
-                        .map(PksFile::getProperties)
-                        .collect(Collectors.toSet());
+    private static final Gson gson = new Gson();
+    private static final TypeAdapter<Object> valueAdapter = gson.getAdapter(Object.class);
 
-        Gson gson = new Gson();
-        JsonObject result = new JsonObject();
-        result.add("resultSize", gson.toJsonTree(filesProperties.size()));
-        result.add("files", gson.toJsonTree(filesProperties));
+    // Streams the files' properties as they're written, sorted by path, so a response is never built up in memory
+    public static void writePksFiles(Collection<PksFile> files, OutputStream out) throws IOException {
+        Collection<PksFile> sortedFiles = sortedByPath(files);
+        JsonWriter writer = newJsonWriter(out);
+        writer.beginObject();
+        writer.name("resultSize").value(sortedFiles.size());
+        writeFiles(writer, sortedFiles);
+        writer.endObject();
+        writer.flush();
+    }
+
+    // The neighbourhood's files sorted by path, truncated is only there if some files were left out
+    public static void writeNeighbourhood(Neighbourhood neighbourhood, OutputStream out) throws IOException {
+        Collection<PksFile> sortedFiles = sortedByPath(neighbourhood.files());
+        JsonWriter writer = newJsonWriter(out);
+        writer.beginObject();
+        writer.name("resultSize").value(sortedFiles.size());
+        if (neighbourhood.truncated()) {
+            writer.name("truncated").value(true);
+        }
+        writeFiles(writer, sortedFiles);
+        writer.endObject();
+        writer.flush();
+    }
 
-        return gson.toJson(result);
+    // The page's files in the order they're in, with the total matched and the cursor for the next page if there is one
+    public static void writePage(Page page, OutputStream out) throws IOException {
+        JsonWriter writer = newJsonWriter(out);
+        writer.beginObject();
+        writer.name("resultSize").value(page.files().size());
+        writer.name("total").value(page.total());
+        if (page.next() != null) {
+            writer.name("cursor").value(page.next().encode());
+        }
+        writeFiles(writer, page.files());
+        writer.endObject();
+        writer.flush();
+    }
+
+    // a file found more than once is only written once
+    private static Collection<PksFile> sortedByPath(Collection<PksFile> files) {
+        Map<String, PksFile> sortedFiles = new TreeMap<>();
+        files.forEach(file -> sortedFiles.putIfAbsent(file.getFilePath(), file));
+        return sortedFiles.values();
+    }
+
+    private static JsonWriter newJsonWriter(OutputStream out) throws IOException {
+        return gson.newJsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    private static void writeFiles(JsonWriter writer, Collection<PksFile> files) throws IOException {
+        writer.name("files").beginArray();
+        for (PksFile file : files) {
+            writer.beginObject();
+            // frontmatter keys can be numbers or dates too, they're named by their text like Gson names map keys
+            for (Map.Entry<?, ?> property : ((Map<?, ?>) file.getProperties()).entrySet()) {
+                writer.name(String.valueOf(property.getKey()));
+                valueAdapter.write(writer, property.getValue());
+            }
+            writer.endObject();
+        }
+        writer.endArray();
     }
 
     public static String fileToJson(PksFile file) {
-        Gson gson = new Gson();
         return gson.toJson(file);
     }
+
+    public static String toJson(Object value) {
+        return gson.toJson(value);
+    }
 }
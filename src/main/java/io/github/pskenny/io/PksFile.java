@@ -1,9 +1,10 @@
 package io.github.pskenny.io;
 
+import io.github.pskenny.io.parser.markdown.ScannedMarkdown;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 public class PksFile implements java.io.Serializable {
@@ -11,6 +12,8 @@ public class PksFile implements java.io.Serializable {
     private transient final String filePath;
     private Map<String, Object> properties;
     private final transient File file;
+    // kept from reading until the file has been transformed, so it isn't read and scanned again
+    private transient ScannedMarkdown markdown;
 
     public PksFile(String filePath, Map<String, Object> properties) {
         this.filePath = filePath;
@@ -20,6 +23,14 @@ public class PksFile implements java.io.Serializable {
         this.properties.put("filePath", filePath);
     }
 
+    public PksFile(String filePath, File file, Map<String, Object> properties) {
+        this.filePath = filePath;
+        this.properties = properties;
+        this.file = file;
+
+        this.properties.put("filePath", filePath);
+    }
+
     public PksFile(File file, String directory, Map<String, Object> properties) {
         this.properties = properties;
         this.file = file;
@@ -32,10 +43,28 @@ public class PksFile implements java.io.Serializable {
         this.properties.put("filePath", filePath);
     }
 
+    // A copy with its own properties map, of the same file on disk
     public PksFile(PksFile source) {
         this.filePath = source.filePath;
         this.properties = new HashMap<>(source.properties);
-        this.file = new File(source.filePath);
+        this.file = source.file;
+        this.markdown = source.markdown;
+    }
+
+    private PksFile(PksFile source, Map<String, Object> properties) {
+        this.filePath = source.filePath;
+        this.properties = properties;
+        this.file = source.file;
+    }
+
+    // The file with only the projected properties, read-only and reading through to the source's properties
+    public static PksFile view(PksFile source, Projection projection) {
+        return view(source, Map.of(), projection);
+    }
+
+    // derived are properties kept for the file elsewhere, they're in the view as if they were the file's own
+    public static PksFile view(PksFile source, Map<String, Object> derived, Projection projection) {
+        return new PksFile(source, new ProjectedProperties(source.properties, derived, projection));
     }
 
     public File getFile() {
@@ -46,20 +75,15 @@ public class PksFile implements java.io.Serializable {
         return this.filePath;
     }
 
-    public Map<String, Object> getProperties() {
-        return this.properties;
+    public ScannedMarkdown getMarkdown() {
+        return this.markdown;
     }
 
-    public void filterProperties(List<String> include, List<String> exclude) {
-        var filteredProperties = new HashMap<>(this.properties);
-
-        if (include != null && !include.isEmpty()) {
-            filteredProperties.keySet().retainAll(include);
-        }
-        if (exclude != null && !exclude.isEmpty()) {
-            exclude.forEach(filteredProperties::remove);
-        }
+    public void setMarkdown(ScannedMarkdown markdown) {
+        this.markdown = markdown;
+    }
 
-        this.properties = filteredProperties;
+    public Map<String, Object> getProperties() {
+        return this.properties;
     }
 }
\ No newline at end of file
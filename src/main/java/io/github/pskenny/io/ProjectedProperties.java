@@ -0,0 +1,101 @@
+package io.github.pskenny.io;
+
+import java.util.*;
+
+// A read-only view of a file's properties with only the projected ones. Nothing is copied, it reads through to the
+// file's own map. Derived properties the repository keeps for the file, like backlinks, are on top of the file's own.
+class ProjectedProperties extends AbstractMap<String, Object> {
+    private final Map<String, Object> properties;
+    private final Map<String, Object> derived;
+    private final Projection projection;
+    private Set<Entry<String, Object>> entrySet;
+
+    ProjectedProperties(Map<String, Object> properties, Map<String, Object> derived, Projection projection) {
+        this.properties = Collections.unmodifiableMap(properties);
+        this.derived = Collections.unmodifiableMap(derived);
+        this.projection = projection;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!projection.includes(key)) {
+            return null;
+        }
+        return derived.containsKey(key) ? derived.get(key) : properties.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return projection.includes(key) && (derived.containsKey(key) || properties.containsKey(key));
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new ProjectedIterator();
+                }
+
+                @Override
+                public int size() {
+                    int size = 0;
+                    for (Iterator<Entry<String, Object>> entries = iterator(); entries.hasNext(); entries.next()) {
+                        size++;
+                    }
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private class ProjectedIterator implements Iterator<Entry<String, Object>> {
+        // a few included properties are looked up, otherwise every property is checked
+        private final Iterator<String> included = projection.include().isEmpty() ? null : projection.include().iterator();
+        private final Iterator<Entry<String, Object>> own = properties.entrySet().iterator();
+        private final Iterator<Entry<String, Object>> derivedEntries = derived.entrySet().iterator();
+        private Entry<String, Object> next = advance();
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<String, Object> current = next;
+            next = advance();
+            return current;
+        }
+
+        private Entry<String, Object> advance() {
+            if (included != null) {
+                while (included.hasNext()) {
+                    String key = included.next();
+                    if (containsKey(key)) {
+                        return new SimpleImmutableEntry<>(key, get(key));
+                    }
+                }
+                return null;
+            }
+            while (own.hasNext()) {
+                Entry<String, Object> entry = own.next();
+                if (!derived.containsKey(entry.getKey()) && !projection.exclude().contains(entry.getKey())) {
+                    return entry;
+                }
+            }
+            while (derivedEntries.hasNext()) {
+                Entry<String, Object> entry = derivedEntries.next();
+                if (!projection.exclude().contains(entry.getKey())) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package io.github.pskenny.io;
+
+import java.util.List;
+
+// The properties of each file a response has. An empty include keeps every property that isn't excluded
+public record Projection(List<String> include, List<String> exclude) {
+    public static final Projection ALL = new Projection(List.of(), List.of());
+    public static final Projection WITHOUT_CONTENT = new Projection(List.of(), List.of("content"));
+    public static final Projection GRAPH = new Projection(List.of("links", "backlinks", "tags", "filePath"), List.of());
+
+    public boolean includes(Object property) {
+        return (include.isEmpty() || include.contains(property)) && !exclude.contains(property);
+    }
+}
@@ -0,0 +1,227 @@
+package io.github.pskenny.io;
+
+import java.util.*;
+
+/*
+A search compiled once from its parameters, inclusions follow AND (INNER JOIN) and exclusions follow OR.
+
+Each parameter value becomes a Clause with its operator worked out and its operand stripped and parsed, so checking
+a file doesn't build or copy anything. Compiled queries are kept in a small LRU cache keyed by the normalised
+parameters (keys and values sorted), the same query from a dashboard is only compiled once.
+ */
+public final class Query {
+    private static final int CACHE_SIZE = 512;
+    private static final Map<String, Query> cache = Collections.synchronizedMap(
+            new LinkedHashMap<>(CACHE_SIZE * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Query> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    public enum Operator {
+        // key with no value, the property just has to be there
+        HAS,
+        EQUALS,
+        // value*
+        PREFIX,
+        // *value
+        SUFFIX,
+        // >value
+        GREATER,
+        // <value
+        LESS
+    }
+
+    private final String key;
+    private final List<Clause> inclusions;
+    private final List<Clause> exclusions;
+
+    private Query(String key, List<Clause> inclusions, List<Clause> exclusions) {
+        this.key = key;
+        this.inclusions = inclusions;
+        this.exclusions = exclusions;
+    }
+
+    public static Query compile(String queryString) {
+        return compile(Search.parse(queryString));
+    }
+
+    public static Query compile(Map<String, List<String>> params) {
+        String normalised = normalise(params);
+        Query query = cache.get(normalised);
+        if (query == null) {
+            query = create(normalised, params);
+            cache.put(normalised, query);
+        }
+        return query;
+    }
+
+    // The normalised parameters, equal for queries matching the same files
+    public String key() {
+        return key;
+    }
+
+    public List<Clause> inclusions() {
+        return inclusions;
+    }
+
+    public List<Clause> exclusions() {
+        return exclusions;
+    }
+
+    public boolean isEmpty() {
+        return inclusions.isEmpty() && exclusions.isEmpty();
+    }
+
+    public boolean matches(Map<String, Object> fileProperties) {
+        for (int i = 0; i < inclusions.size(); i++) {
+            if (!inclusions.get(i).matches(fileProperties)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < exclusions.size(); i++) {
+            if (exclusions.get(i).matches(fileProperties)) {
+                // now you've matching something you shouldn't have
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Query create(String key, Map<String, List<String>> params) {
+        List<Clause> inclusions = new ArrayList<>();
+        List<Clause> exclusions = new ArrayList<>();
+        new TreeMap<>(params).forEach((name, values) -> {
+            boolean exclusion = name.startsWith("!");
+            for (String value : values) {
+                if (exclusion) {
+                    // an empty value is compared to the property like any other value
+                    exclusions.add(Clause.of(name.substring(1), value, false));
+                } else {
+                    inclusions.add(Clause.of(name, value, true));
+                }
+            }
+        });
+        return new Query(key, List.copyOf(inclusions), List.copyOf(exclusions));
+    }
+
+    private static String normalise(Map<String, List<String>> params) {
+        StringBuilder normalised = new StringBuilder();
+        new TreeMap<>(params).forEach((key, values) -> {
+            List<String> sortedValues = new ArrayList<>(values);
+            Collections.sort(sortedValues);
+            for (String value : sortedValues) {
+                normalised.append(key).append('\0').append(value).append('\0');
+            }
+        });
+        return normalised.toString();
+    }
+
+    /*
+    One parameter value. value is the operand without its operator, typedValue is it parsed as a number or date (or
+    null) and booleanValue is the whole parameter parsed as a boolean, booleans are compared to that whatever the
+    operator.
+     */
+    public record Clause(String key, Operator operator, String value, TypedValue typedValue, boolean booleanValue) {
+
+        // there ain't no way to escape out of the asterisk and search for one that is at the start or end
+        static Clause of(String key, String parameter, boolean inclusion) {
+            boolean booleanValue = Boolean.parseBoolean(parameter);
+            if (parameter.isEmpty() && inclusion) {
+                return new Clause(key, Operator.HAS, parameter, null, booleanValue);
+            } else if (parameter.endsWith("*")) {
+                return new Clause(key, Operator.PREFIX, parameter.substring(0, parameter.length() - 1), null, booleanValue);
+            } else if (parameter.startsWith("*")) {
+                return new Clause(key, Operator.SUFFIX, parameter.substring(1), null, booleanValue);
+            } else if (parameter.startsWith(">") || parameter.startsWith("<")) {
+                String bound = parameter.substring(1);
+                Operator operator = parameter.startsWith(">") ? Operator.GREATER : Operator.LESS;
+                return new Clause(key, operator, bound, TypedValue.parse(bound), booleanValue);
+            }
+            return new Clause(key, Operator.EQUALS, parameter, TypedValue.parse(parameter), booleanValue);
+        }
+
+        public boolean matches(Map<String, Object> fileProperties) {
+            Object fileProperty = fileProperties.get(key);
+            if (fileProperty == null && !fileProperties.containsKey(key)) {
+                return false;
+            }
+            if (operator == Operator.HAS) {
+                return true;
+            }
+
+            if (fileProperty instanceof String string) {
+                return matchString(string);
+            } else if (fileProperty instanceof List<?> list) {
+                for (int i = 0; i < list.size(); i++) {
+                    if (matchElement(list.get(i))) {
+                        return true;
+                    }
+                }
+                return false;
+            } else if (fileProperty instanceof String[] strings) {
+                for (String string : strings) {
+                    if (string != null && matchString(string)) {
+                        return true;
+                    }
+                }
+                return false;
+            } else if (fileProperty instanceof Boolean booleanProperty) {
+                return booleanProperty == booleanValue;
+            }
+            // numbers and dates, anything else never matches
+            return matchTyped(fileProperty);
+        }
+
+        private boolean matchElement(Object element) {
+            if (element instanceof String string) {
+                return matchString(string);
+            }
+            // booleans in a list aren't compared
+            return !(element instanceof Boolean) && matchTyped(element);
+        }
+
+        private boolean matchString(String string) {
+            return switch (operator) {
+                case PREFIX -> string.startsWith(value);
+                case SUFFIX -> string.endsWith(value);
+                // text of a number or date compares as one
+                case GREATER, LESS -> {
+                    TypedValue typed = TypedValue.parse(string);
+                    yield typed != null && inRange(typed.date(), typed.value());
+                }
+                default -> string.equals(value);
+            };
+        }
+
+        // Numbers and dates compare with > and <, are equal to a parameter of the same number or date and never
+        // match a wildcard
+        private boolean matchTyped(Object fileProperty) {
+            boolean date;
+            double typed;
+            if (fileProperty instanceof Number number) {
+                date = false;
+                typed = number.doubleValue();
+            } else if (fileProperty instanceof Date dateProperty) {
+                date = true;
+                typed = dateProperty.getTime();
+            } else {
+                return false;
+            }
+
+            return switch (operator) {
+                case GREATER, LESS -> inRange(date, typed);
+                case EQUALS -> typedValue != null && typedValue.date() == date && typedValue.value() == typed;
+                default -> false;
+            };
+        }
+
+        private boolean inRange(boolean date, double typed) {
+            if (typedValue == null || typedValue.date() != date) {
+                return false;
+            }
+            return operator == Operator.GREATER ? typed > typedValue.value() : typed < typedValue.value();
+        }
+    }
+}
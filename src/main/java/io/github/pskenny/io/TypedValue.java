@@ -0,0 +1,76 @@
+package io.github.pskenny.io;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.regex.Pattern;
+
+/*
+A number or a date from a property value or search parameter, so > and < can compare them. Both are kept as a
+double: dates as milliseconds since the epoch, which is exact for any date in a note. A date without a time is the
+start of that day in UTC, the same as YAML timestamps are loaded.
+
+Numbers only compare to numbers and dates only to dates.
+ */
+public record TypedValue(boolean date, double value) {
+    private static final Pattern NUMBER = Pattern.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+
+    // null if the value isn't a number, a date or text of one
+    public static TypedValue of(Object value) {
+        if (value instanceof Number number) {
+            return new TypedValue(false, number.doubleValue());
+        } else if (value instanceof Date date) {
+            return new TypedValue(true, date.getTime());
+        } else if (value instanceof String string) {
+            return parse(string);
+        }
+        return null;
+    }
+
+    // null if the text isn't a number or an ISO 8601 date
+    public static TypedValue parse(String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        if (NUMBER.matcher(trimmed).matches()) {
+            try {
+                return new TypedValue(false, new BigDecimal(trimmed).doubleValue());
+            } catch (NumberFormatException e) {
+                // an exponent too big for BigDecimal, like 1e9999999999
+                return null;
+            }
+        }
+        Long millis = parseDate(trimmed);
+        return millis == null ? null : new TypedValue(true, millis);
+    }
+
+    public boolean comparableTo(TypedValue other) {
+        return other != null && date == other.date;
+    }
+
+    private static Long parseDate(String text) {
+        // yyyy-MM-dd at the least
+        if (text.length() < 10 || text.charAt(4) != '-' || !Character.isDigit(text.charAt(0))) {
+            return null;
+        }
+        try {
+            if (text.length() == 10) {
+                return LocalDate.parse(text).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            }
+            String dateTime = text.replace(' ', 'T');
+            try {
+                return OffsetDateTime.parse(dateTime).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                // no offset, UTC like dates
+                return LocalDateTime.parse(dateTime).toInstant(ZoneOffset.UTC).toEpochMilli();
+            }
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
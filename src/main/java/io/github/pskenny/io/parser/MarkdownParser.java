@@ -2,12 +2,12 @@ package io.github.pskenny.io.parser;
 
 import io.github.pskenny.io.PksFile;
 import io.github.pskenny.io.parser.markdown.MarkdownLinkReader;
+import io.github.pskenny.io.parser.markdown.MarkdownScanner;
 import io.github.pskenny.io.parser.markdown.YamlFrontmatterReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
@@ -25,12 +25,14 @@ public class MarkdownParser {
 
     public PksFile initialParse(Path path, String directory) {
         try {
-            var content = Files.readString(path, Charset.defaultCharset());
+            // the only read of the file, actions use the same scan
+            var markdown = MarkdownScanner.scan(Files.readAllBytes(path));
             // standard markdown only: frontmatter, md links. No transformations.
-            var frontmatter = yamlFrontmatterReader.getFrontMatterProperties(content);
+            var frontmatter = yamlFrontmatterReader.getFrontMatterProperties(markdown);
             PksFile pksFile = new PksFile(path.toFile(), directory, frontmatter);
+            pksFile.setMarkdown(markdown);
             // read the Markdown links in the file, add if any
-            var links = markdownLinkReader.getMarkdownLinksProperties(content);
+            var links = markdownLinkReader.getMarkdownLinksProperties(markdown);
             if (links != null && !links.isEmpty()) {
                 var linksMap = Map.of("links", links);
                 pksFile.getProperties().putAll(linksMap);
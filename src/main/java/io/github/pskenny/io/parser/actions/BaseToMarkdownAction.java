@@ -1,79 +1,114 @@
 package io.github.pskenny.io.parser.actions;
 
 import io.github.pskenny.io.PksFile;
+import io.github.pskenny.io.parser.markdown.MarkdownScanner;
+import io.github.pskenny.io.parser.markdown.ScannedMarkdown;
+import io.github.pskenny.luabase.CorpusView;
 import io.github.pskenny.luabase.LuaBaseProcessor;
 import io.github.pskenny.luabase.NaiveBaseToLuaBaseConverter;
 import io.github.pskenny.luabase.YamlBaseParser;
+import io.github.pskenny.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 // read the content and change the content
 /*
-Maybe Idea?:
-Get which properties are used in the base. Keep a list of files and their dependant properties for dynamic content and use
-that as a trigger for when other files properties are updated to update that file with base
+Which properties the file's bases read is kept (readProperties) so the repository only renders them again when other
+files' changes touch those properties.
  */
 public class BaseToMarkdownAction {
     private static final Logger logger = LoggerFactory.getLogger(BaseToMarkdownAction.class);
+    private final Set<String> readProperties = new HashSet<>();
+    private boolean readsAnyProperty = false;
+    private boolean foundBases = false;
+    private final Metrics metrics;
 
-    public Set<String> act(PksFile pksFile, HashMap<String, PksFile> allPksFiles) {
+    // render times are recorded to metrics
+    public BaseToMarkdownAction(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Renders the file's bases over the corpus, the same one for every file in an update round
+    public Set<String> act(PksFile pksFile, CorpusView corpus) {
+        foundBases = false;
         if (!pksFile.getFilePath().endsWith(".md")) {
             return Set.of();
         }
 
         Set<String> changedFiles = new HashSet<>();
-        String content;
-        if (pksFile.getProperties().containsKey("content")) {
-            content = pksFile.getProperties().get("content").toString();
-        } else {
-            try {
-                content = Files.readString(pksFile.getFile().toPath(), StandardCharsets.UTF_8);
-            } catch (IOException ex) {
-                logger.error("Error reading file {}: {}", pksFile.getFile().getAbsolutePath(), ex.getMessage());
-                return Set.of();
-            }
+        ScannedMarkdown markdown;
+        try {
+            markdown = MarkdownScanner.scan(pksFile);
+        } catch (IOException ex) {
+            logger.error("Error reading file {}: {}", pksFile.getFile().getAbsolutePath(), ex.getMessage());
+            return Set.of();
+        }
+        foundBases = !markdown.baseBlocks().isEmpty();
+        if (!foundBases) {
+            return changedFiles;
         }
-        Pattern luabasePattern = Pattern.compile("(?s)```base(.*?)```");
-        Matcher matcher = luabasePattern.matcher(content);
 
-        StringBuffer resultBuffer = new StringBuffer();
+        String content = markdown.content();
+        StringBuilder resultBuilder = new StringBuilder(content.length());
         NaiveBaseToLuaBaseConverter naiveBaseToLuaBaseConverter = new NaiveBaseToLuaBaseConverter();
+        int last = 0;
 
-        while (matcher.find()) {
-            String obsidianBaseYaml = matcher.group(1).trim();  // Extract YAML content between ```base and ```
+        for (ScannedMarkdown.Span baseBlock : markdown.baseBlocks()) {
+            String obsidianBaseYaml = baseBlock.value().trim();  // Extract YAML content between ```base and ```
             String replacement = "";
+            boolean propertiesKnown = false;
             // Convert to Lua and process
             try {
-                // this copy fucking sucks. So much data to copy. Makes bases really expensive
-                var copiedFiles = Map.copyOf(allPksFiles);
                 Map<String, Object> spec = new YamlBaseParser().parse(naiveBaseToLuaBaseConverter.convert(obsidianBaseYaml));
                 LuaBaseProcessor processor = new LuaBaseProcessor(spec);
+                Set<String> properties = processor.properties();
+                if (properties == null) {
+                    readsAnyProperty = true;
+                } else {
+                    readProperties.addAll(properties);
+                }
+                propertiesKnown = true;
 
                 // Replace this match with the Lua table
-                replacement = processor.process(copiedFiles);
+                long renderStart = System.nanoTime();
+                replacement = processor.process(corpus);
+                metrics.timer("pkspkms_base_render_duration_seconds", "Time to render a base block")
+                        .observeNanos(System.nanoTime() - renderStart);
 
                 changedFiles.add(pksFile.getFilePath());
                 logger.debug("Converted Obsidian Base on " + pksFile.getFilePath());
             } catch (Exception e) {
                 logger.warn("Couldn't do Base conversion on " + pksFile.getFilePath() + "\n" + e.getMessage());
                 logger.warn(obsidianBaseYaml);
+                // it might render once other files change, it's only known to depend on all of them
+                if (!propertiesKnown) {
+                    readsAnyProperty = true;
+                }
             }
-            matcher.appendReplacement(resultBuffer, Matcher.quoteReplacement(replacement));
+            resultBuilder.append(content, last, baseBlock.start()).append(replacement);
+            last = baseBlock.end();
         }
 
         if (!changedFiles.isEmpty()) {
-            matcher.appendTail(resultBuffer);
-            String newContent = resultBuffer.toString();
+            resultBuilder.append(content, last, content.length());
+            String newContent = resultBuilder.toString();
             pksFile.getProperties().put("content", newContent);
+            pksFile.setMarkdown(MarkdownScanner.scan(newContent));
         }
 
         return changedFiles;
     }
+
+    // true if the last file acted on had any bases, rendered or not
+    public boolean foundBases() {
+        return foundBases;
+    }
+
+    // The properties of other files the file's bases read, null if they could read any
+    public Set<String> readProperties() {
+        return readsAnyProperty ? null : readProperties;
+    }
 }
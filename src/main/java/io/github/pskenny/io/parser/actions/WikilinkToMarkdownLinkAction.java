@@ -1,47 +1,43 @@
 package io.github.pskenny.io.parser.actions;
 
 import io.github.pskenny.io.PksFile;
+import io.github.pskenny.io.parser.markdown.MarkdownScanner;
+import io.github.pskenny.io.parser.markdown.ScannedMarkdown;
 import io.github.pskenny.repo.WikilinkResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class WikilinkToMarkdownLinkAction {
     private static final Logger logger = LoggerFactory.getLogger(WikilinkToMarkdownLinkAction.class);
 
-    // Matches [[...]] ensuring it's not preceded by a tilde (~[[...]])
-    private static final Pattern wikiLinkPattern = Pattern.compile("(?<!~)\\[\\[(.*?)\\]\\]");
+    private boolean foundWikilinks = false;
 
     public Set<String> act(PksFile pksFile, WikilinkResolver wikilinkResolver) {
+        foundWikilinks = false;
         if (!pksFile.getFilePath().endsWith(".md")) {
             return Set.of();
         }
 
         Set<String> changedFiles = new HashSet<>();
-        String content;
-        if (pksFile.getProperties().containsKey("content")) {
-           content = pksFile.getProperties().get("content").toString();
-        } else {
-            try {
-                content = Files.readString(pksFile.getFile().toPath(), StandardCharsets.UTF_8);
-            } catch (IOException ex) {
-                logger.error("Error reading file " + pksFile.getFile().getAbsolutePath() + ": " + ex.getMessage());
-                return Set.of();
-            }
+        ScannedMarkdown markdown;
+        try {
+            markdown = MarkdownScanner.scan(pksFile);
+        } catch (IOException ex) {
+            logger.error("Error reading file " + pksFile.getFile().getAbsolutePath() + ": " + ex.getMessage());
+            return Set.of();
         }
+        foundWikilinks = !markdown.wikilinks().isEmpty();
 
-        StringBuffer newContentBuffer = new StringBuffer();
-        Matcher matcher = wikiLinkPattern.matcher(content);
+        String content = markdown.content();
+        StringBuilder newContentBuilder = new StringBuilder(content.length());
+        int last = 0;
 
-        while (matcher.find()) {
-            String wikilinkTarget = matcher.group(1);
+        for (ScannedMarkdown.Span wikilink : markdown.wikilinks()) {
+            String wikilinkTarget = wikilink.value();
             String linkText;
             String linkPath;
 
@@ -61,19 +57,25 @@ public class WikilinkToMarkdownLinkAction {
             }
 
             String markdownLink = String.format("[%s](%s)", linkText, resolvedLink);
-            matcher.appendReplacement(newContentBuffer, Matcher.quoteReplacement(markdownLink));
+            newContentBuilder.append(content, last, wikilink.start()).append(markdownLink);
+            last = wikilink.end();
 
             changedFiles.add(resolvedLink);
         }
 
-        // Append the rest of the string
-        matcher.appendTail(newContentBuffer);
-
         if (!changedFiles.isEmpty()) {
-            String newContent = newContentBuffer.toString();
+            // Append the rest of the string
+            newContentBuilder.append(content, last, content.length());
+            String newContent = newContentBuilder.toString();
             pksFile.getProperties().put("content", newContent);
+            pksFile.setMarkdown(MarkdownScanner.scan(newContent));
         }
 
         return changedFiles;
     }
+
+    // true if the last file acted on had any wikilinks, resolved or not
+    public boolean foundWikilinks() {
+        return foundWikilinks;
+    }
 }
\ No newline at end of file
@@ -11,12 +11,21 @@ public class MarkdownLinkReader {
     private final Pattern markdownLinkPattern = Pattern.compile("\\[(.*?)\\]\\((.*?)\\)");
 
     private List<String> extractLinks(String content) {
-        Set<String> uniqueUrls = new HashSet<>();
-        List<String> markdownLinks = new ArrayList<>();
+        List<String> urls = new ArrayList<>();
 
         Matcher matcher = markdownLinkPattern.matcher(content);
         while (matcher.find()) {
-            String url = matcher.group(2);
+            urls.add(matcher.group(2));
+        }
+
+        return filterLinks(urls);
+    }
+
+    private List<String> filterLinks(List<String> urls) {
+        Set<String> uniqueUrls = new HashSet<>();
+        List<String> markdownLinks = new ArrayList<>();
+
+        for (String url : urls) {
             // don't count urls for the web
             if (url.toLowerCase().startsWith("http://") || url.toLowerCase().startsWith("https://")) {
                 continue;
@@ -33,4 +42,10 @@ public class MarkdownLinkReader {
     public List<String> getMarkdownLinksProperties(final String content) {
         return extractLinks(content);
     }
+
+    public List<String> getMarkdownLinksProperties(final ScannedMarkdown markdown) {
+        List<String> urls = new ArrayList<>(markdown.links().size());
+        markdown.links().forEach(link -> urls.add(link.value()));
+        return filterLinks(urls);
+    }
 }
\ No newline at end of file
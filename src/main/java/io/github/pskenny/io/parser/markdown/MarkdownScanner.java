@@ -0,0 +1,253 @@
+package io.github.pskenny.io.parser.markdown;
+
+import io.github.pskenny.io.PksFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Finds frontmatter, Markdown links, wikilinks and bases in a single pass over the UTF-8 bytes of a file. Every token
+starts with an ASCII char so bytes are compared directly and only matched text is turned into Strings.
+
+Matches the same text as the patterns it replaces:
+  frontmatter  ^---\s*$(.*?)^---\s*$ (multiline, dotall) starting at the beginning of the file
+  links        \[(.*?)\]\((.*?)\)
+  wikilinks    (?<!~)\[\[(.*?)\]\]
+  bases        (?s)```base(.*?)```
+Each kind of token is matched independently, like running each pattern over the content, so they can overlap.
+ */
+public class MarkdownScanner {
+    private static final byte[] FRONTMATTER_DELIMITER = "---".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BASE_START = "```base".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BASE_END = "```".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] bytes;
+    private final String content;
+    // char offset of each byte offset, null when every char is one byte
+    private int[] charOffsets;
+
+    private MarkdownScanner(byte[] bytes, String content) {
+        this.bytes = bytes;
+        this.content = content;
+    }
+
+    public static ScannedMarkdown scan(byte[] bytes) {
+        String content = new String(bytes, StandardCharsets.UTF_8);
+        MarkdownScanner scanner = new MarkdownScanner(bytes, content);
+        if (!scanner.mapCharOffsets()) {
+            // malformed UTF-8 was replaced while decoding, scan what was decoded instead
+            return scan(content);
+        }
+        return scanner.scan();
+    }
+
+    public static ScannedMarkdown scan(String content) {
+        MarkdownScanner scanner = new MarkdownScanner(content.getBytes(StandardCharsets.UTF_8), content);
+        scanner.mapCharOffsets();
+        return scanner.scan();
+    }
+
+    // The scan kept on the file, or a new one of its content (transformed if it has been, otherwise read from disk)
+    public static ScannedMarkdown scan(PksFile pksFile) throws IOException {
+        if (pksFile.getMarkdown() == null) {
+            Object content = pksFile.getProperties().get("content");
+            pksFile.setMarkdown(content != null
+                    ? scan(content.toString())
+                    : scan(Files.readAllBytes(pksFile.getFile().toPath())));
+        }
+        return pksFile.getMarkdown();
+    }
+
+    private ScannedMarkdown scan() {
+        List<ScannedMarkdown.Span> links = new ArrayList<>();
+        List<ScannedMarkdown.Span> wikilinks = new ArrayList<>();
+        List<ScannedMarkdown.Span> baseBlocks = new ArrayList<>();
+        String frontmatter = frontmatter();
+
+        // where each pattern carries on from after its last match
+        int nextLink = 0;
+        int nextWikilink = 0;
+        int nextBase = 0;
+        boolean moreBases = true;
+
+        for (int i = 0; i < bytes.length; i++) {
+            byte b = bytes[i];
+            if (b == '[') {
+                if (i >= nextLink) {
+                    nextLink = link(i, links);
+                }
+                if (i >= nextWikilink && i + 1 < bytes.length && bytes[i + 1] == '[' && (i == 0 || bytes[i - 1] != '~')) {
+                    nextWikilink = wikilink(i, wikilinks);
+                }
+            } else if (b == '`' && moreBases && i >= nextBase && startsWith(i, BASE_START)) {
+                int end = indexOf(BASE_END, i + BASE_START.length);
+                if (end < 0) {
+                    // nothing after this can close a base either
+                    moreBases = false;
+                } else {
+                    baseBlocks.add(span(i, end + BASE_END.length, i + BASE_START.length, end));
+                    nextBase = end + BASE_END.length;
+                }
+            }
+        }
+
+        return new ScannedMarkdown(content, frontmatter, links, wikilinks, baseBlocks);
+    }
+
+    // Returns where to look for the next link from
+    private int link(int start, List<ScannedMarkdown.Span> links) {
+        for (int i = start + 1; i + 1 < bytes.length; i++) {
+            if (isLineTerminator(i)) {
+                break;
+            }
+            if (bytes[i] == ']' && bytes[i + 1] == '(') {
+                int urlStart = i + 2;
+                for (int j = urlStart; j < bytes.length && !isLineTerminator(j); j++) {
+                    if (bytes[j] == ')') {
+                        links.add(span(start, j + 1, urlStart, j));
+                        return j + 1;
+                    }
+                }
+                // a later ]( on this line has no ) after it either
+                break;
+            }
+        }
+        return start + 1;
+    }
+
+    // Returns where to look for the next wikilink from
+    private int wikilink(int start, List<ScannedMarkdown.Span> wikilinks) {
+        int targetStart = start + 2;
+        for (int i = targetStart; i + 1 < bytes.length && !isLineTerminator(i); i++) {
+            if (bytes[i] == ']' && bytes[i + 1] == ']') {
+                wikilinks.add(span(start, i + 2, targetStart, i));
+                return i + 2;
+            }
+        }
+        return start + 1;
+    }
+
+    private String frontmatter() {
+        if (!startsWith(0, FRONTMATTER_DELIMITER)) {
+            return null;
+        }
+        int firstLineEnd = delimiterLineEnd(0);
+        if (firstLineEnd < 0) {
+            return null;
+        }
+
+        int lineStart = nextLineStart(firstLineEnd);
+        while (lineStart >= 0) {
+            if (startsWith(lineStart, FRONTMATTER_DELIMITER) && delimiterLineEnd(lineStart) >= 0) {
+                return content.substring(charOffset(firstLineEnd), charOffset(lineStart));
+            }
+            lineStart = nextLineStart(lineStart);
+        }
+        return null;
+    }
+
+    // Where the line ends if it's --- followed by nothing but whitespace, otherwise -1
+    private int delimiterLineEnd(int lineStart) {
+        for (int i = lineStart + FRONTMATTER_DELIMITER.length; i < bytes.length; i++) {
+            if (isLineTerminator(i)) {
+                return i;
+            }
+            if (!isWhitespace(bytes[i])) {
+                return -1;
+            }
+        }
+        return bytes.length;
+    }
+
+    private int nextLineStart(int from) {
+        for (int i = from; i < bytes.length; i++) {
+            int length = lineTerminatorLength(i);
+            if (length > 0) {
+                return i + length < bytes.length ? i + length : -1;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isLineTerminator(int i) {
+        return lineTerminatorLength(i) > 0;
+    }
+
+    // Java regex line terminators: \n, \r\n, \r, next line, line separator and paragraph separator
+    private int lineTerminatorLength(int i) {
+        byte b = bytes[i];
+        if (b == '\n') {
+            return 1;
+        } else if (b == '\r') {
+            return i + 1 < bytes.length && bytes[i + 1] == '\n' ? 2 : 1;
+        } else if (b == (byte) 0xC2) {
+            return i + 1 < bytes.length && bytes[i + 1] == (byte) 0x85 ? 2 : 0;
+        } else if (b == (byte) 0xE2) {
+            return i + 2 < bytes.length && bytes[i + 1] == (byte) 0x80
+                    && (bytes[i + 2] == (byte) 0xA8 || bytes[i + 2] == (byte) 0xA9) ? 3 : 0;
+        }
+        return 0;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    private boolean startsWith(int offset, byte[] prefix) {
+        if (offset + prefix.length > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(byte[] target, int from) {
+        for (int i = from; i + target.length <= bytes.length; i++) {
+            if (startsWith(i, target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private ScannedMarkdown.Span span(int start, int end, int valueStart, int valueEnd) {
+        return new ScannedMarkdown.Span(charOffset(start), charOffset(end),
+                content.substring(charOffset(valueStart), charOffset(valueEnd)));
+    }
+
+    private int charOffset(int byteOffset) {
+        return charOffsets == null ? byteOffset : charOffsets[byteOffset];
+    }
+
+    // Returns false if the bytes don't decode to the content one for one
+    private boolean mapCharOffsets() {
+        int length = bytes.length;
+        int firstMultiByte = 0;
+        while (firstMultiByte < length && bytes[firstMultiByte] >= 0) {
+            firstMultiByte++;
+        }
+        if (firstMultiByte == length) {
+            return content.length() == length;
+        }
+
+        charOffsets = new int[length + 1];
+        int chars = 0;
+        for (int i = 0; i < length; i++) {
+            charOffsets[i] = chars;
+            int b = bytes[i] & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                // the first byte of a code point, 4 byte code points are two chars
+                chars += b >= 0xF0 ? 2 : 1;
+            }
+        }
+        charOffsets[length] = chars;
+        return chars == content.length();
+    }
+}
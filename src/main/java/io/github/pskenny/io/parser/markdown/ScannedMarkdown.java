@@ -0,0 +1,21 @@
+package io.github.pskenny.io.parser.markdown;
+
+import java.util.List;
+
+/*
+Everything the parser and actions need from a Markdown file, found in one pass by MarkdownScanner. Offsets are
+char offsets into content: start is the first char of the match and end is one past the last.
+
+frontmatter is the text between the --- lines, null if the file doesn't start with frontmatter.
+links are [text](url) with the url as the value, wikilinks are [[target]] with the target as the value and
+baseBlocks are ```base ... ``` with the YAML between as the value.
+ */
+public record ScannedMarkdown(
+        String content,
+        String frontmatter,
+        List<Span> links,
+        List<Span> wikilinks,
+        List<Span> baseBlocks
+) {
+    public record Span(int start, int end, String value) {}
+}
@@ -34,6 +34,20 @@ public class YamlFrontmatterReader {
         }
     }
 
+    public Map<String, Object> getFrontMatterProperties(final ScannedMarkdown markdown) {
+        if (markdown.frontmatter() == null) {
+            return Collections.emptyMap();
+        }
+
+        try {
+            return parseYaml(markdown.frontmatter());
+        } catch (Exception ex) {
+            logger.error("Error parsing YAML front matter: " + ex.getMessage());
+        }
+
+        return Collections.emptyMap();
+    }
+
     public Map<String, Object> getFrontMatterProperties(final String fileContent) {
         if (fileContent == null || fileContent.isEmpty()) {
             return Collections.emptyMap();
@@ -43,12 +57,7 @@ public class YamlFrontmatterReader {
             Matcher matcher = FRONTMATTER_PATTERN.matcher(fileContent);
 
             if (matcher.find() && matcher.start() == 0) {
-                String yamlBlock = matcher.group(1).trim();
-                if (yamlBlock.isEmpty()) {
-                    return Collections.emptyMap();
-                }
-
-                return new Yaml().load(yamlBlock);
+                return parseYaml(matcher.group(1));
             }
         } catch (Exception ex) {
             logger.error("Error parsing YAML front matter: " + ex.getMessage());
@@ -56,4 +65,13 @@ public class YamlFrontmatterReader {
 
         return Collections.emptyMap();
     }
+
+    private Map<String, Object> parseYaml(String frontmatter) {
+        String yamlBlock = frontmatter.trim();
+        if (yamlBlock.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        return new Yaml().load(yamlBlock);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package io.github.pskenny.luabase;
+
+import io.github.pskenny.io.PksFile;
+
+import java.util.Collections;
+import java.util.Map;
+
+/*
+The files bases are rendered over. The repository makes one for each update round and every base block rendered in the
+round shares it, instead of each block copying every file. The map is a read-only view of the repository's, not a
+copy, so making one costs nothing however many files there are. The repository doesn't add or remove files during a
+round. The files in it are the repository's own, so a base rendered later in a round sees what bases rendered before it
+put in their files' content.
+
+generation is that of the snapshot the round's update publishes, round counts from 1.
+ */
+public record CorpusView(long generation, int round, Map<String, PksFile> files) {
+    public CorpusView {
+        files = Collections.unmodifiableMap(files);
+    }
+}
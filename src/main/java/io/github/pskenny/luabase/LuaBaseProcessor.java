@@ -7,11 +7,18 @@ import org.luaj.vm2.lib.jse.CoerceJavaToLua;
 import org.luaj.vm2.lib.jse.JsePlatform;
 
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 // It's important to note this doesn't do anything to handle the various types YAML has that Lua doesn't even
 // have a  default 1-to-1 representation for
 public class LuaBaseProcessor {
+    // a property read by one of the functions above or straight from the file
+    private static final Pattern PROPERTY_READ = Pattern.compile(
+            "(?:hasPropertyValue|hasProperty|getPropertyValue)\\(\\s*file\\s*,\\s*\"([^\"]*)\"|file:get\\(\\s*\"([^\"]*)\"\\s*\\)");
+    private static final Pattern FILE_PASSED = Pattern.compile("(\\w+)\\(\\s*file\\s*\\)");
+    private static final Pattern FILE = Pattern.compile("\\bfile\\b");
     private final Globals globals;
     private final Map<String, Object> spec;
 
@@ -49,6 +56,10 @@ function toFixed(num, decimals) return string.format("%." .. decimals .. "f", nu
         this.spec = spec;
     }
 
+    public String process(CorpusView corpus) {
+        return process(corpus.files());
+    }
+
     public String process(Map<String, PksFile> files) {
         addFormulas();
         Map<String, PksFile> filteredFiles = applyFilters(files);
@@ -57,6 +68,64 @@ function toFixed(num, decimals) return string.format("%." .. decimals .. "f", nu
         return renderTable(sortedFiles);
     }
 
+    /*
+    The properties of files the base reads to filter, order and sort them, so what its table depends on. null if an
+    expression reads the file some other way and it could depend on any of them.
+     */
+    public Set<String> properties() {
+        Map<String, String> formulas = (Map<String, String>) spec.get("formulas");
+        Map<String, Object> viewSpec = ((List<Map<String, Object>>) spec.get("views")).get(0);
+        List<String> expressions = new ArrayList<>();
+        if (formulas != null) {
+            expressions.addAll(formulas.values());
+        }
+        Object filtersSpec = viewSpec.get("filters");
+        if (filtersSpec != null) {
+            addStrings(filtersSpec, expressions);
+        }
+
+        Set<String> properties = new HashSet<>();
+        List<String> orderSpec = (List<String>) viewSpec.get("order");
+        if (orderSpec == null || orderSpec.isEmpty()) {
+            // a table without an order lists the paths
+            properties.add("filePath");
+        } else {
+            expressions.addAll(orderSpec);
+        }
+        List<Map<String, String>> sortSpec = (List<Map<String, String>>) viewSpec.get("sort");
+        if (sortSpec != null) {
+            sortSpec.forEach(sort -> properties.add(sort.get("property")));
+        }
+
+        for (String expression : expressions) {
+            Matcher read = PROPERTY_READ.matcher(expression);
+            while (read.find()) {
+                properties.add(read.group(1) != null ? read.group(1) : read.group(2));
+            }
+            // formulas are made of the same reads, anything else given the file is unknown
+            String rest = FILE_PASSED.matcher(read.replaceAll(""))
+                    .replaceAll(call -> formulas != null && formulas.containsKey(call.group(1)) ? "" : call.group());
+            if (FILE.matcher(rest).find()) {
+                return null;
+            }
+        }
+        return properties;
+    }
+
+    // the keys and values of a filter tree, the keys are operators or expressions
+    private static void addStrings(Object tree, List<String> strings) {
+        if (tree instanceof String string) {
+            strings.add(string);
+        } else if (tree instanceof Map<?, ?> map) {
+            map.forEach((key, value) -> {
+                addStrings(key, strings);
+                addStrings(value, strings);
+            });
+        } else if (tree instanceof List<?> list) {
+            list.forEach(item -> addStrings(item, strings));
+        }
+    }
+
     private Map<String, PksFile> applyFilters(Map<String, PksFile> files) {
         Map<String, Object> viewSpec = ((List<Map<String, Object>>) spec.get("views")).get(0);
         Map<String, Object> filtersSpec = (Map<String, Object>) viewSpec.get("filters");
@@ -0,0 +1,199 @@
+package io.github.pskenny.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/*
+Counters, gauges and histograms written out in the Prometheus text format. A metric is looked up by its name and
+label pairs ("route", "/files/list") and made the first time, so code records to it without registering anything
+first. Recording is a few adds to LongAdders and never blocks.
+
+Each server has its own, which it exposes at /metrics, and hands to its repository to record to.
+ */
+public class Metrics {
+    // seconds, from a cached search to a big graph or base
+    private static final double[] SECONDS_BUCKETS =
+            {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    private record Family(String name, String help, String type, Map<String, Object> metrics) {}
+
+    public static class Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    public static class Gauge {
+        private final AtomicLong bits = new AtomicLong(Double.doubleToLongBits(0));
+        private volatile DoubleSupplier supplier;
+
+        public void set(double value) {
+            bits.set(Double.doubleToLongBits(value));
+        }
+
+        // read each time the metrics are written instead of being set
+        public void setSupplier(DoubleSupplier supplier) {
+            this.supplier = supplier;
+        }
+
+        public double get() {
+            DoubleSupplier current = supplier;
+            return current != null ? current.getAsDouble() : Double.longBitsToDouble(bits.get());
+        }
+    }
+
+    // Counts of observations up to each bucket's bound, in seconds for the timings here
+    public static class Histogram {
+        private final double[] bounds;
+        private final LongAdder[] counts;
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.counts = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        public void observe(double value) {
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) {
+                bucket++;
+            }
+            counts[bucket].increment();
+            sum.add(value);
+        }
+
+        public void observeNanos(long nanos) {
+            observe(nanos / 1e9);
+        }
+
+        public long count() {
+            long count = 0;
+            for (LongAdder bucketCount : counts) {
+                count += bucketCount.sum();
+            }
+            return count;
+        }
+    }
+
+    // labels are name, value pairs
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) metric(name, help, "counter", labels, Counter::new);
+    }
+
+    public Gauge gauge(String name, String help, String... labels) {
+        return (Gauge) metric(name, help, "gauge", labels, Gauge::new);
+    }
+
+    // a histogram of seconds
+    public Histogram timer(String name, String help, String... labels) {
+        return (Histogram) metric(name, help, "histogram", labels, () -> new Histogram(SECONDS_BUCKETS));
+    }
+
+    private Object metric(String name, String help, String type, String[] labels, Supplier<Object> create) {
+        Family family = families.computeIfAbsent(name,
+                n -> new Family(n, help, type, new ConcurrentHashMap<>()));
+        if (!family.type().equals(type)) {
+            throw new IllegalArgumentException(name + " is a " + family.type() + ", not a " + type);
+        }
+        return family.metrics().computeIfAbsent(labelText(labels), l -> create.get());
+    }
+
+    public void write(Writer out) throws IOException {
+        for (Family family : families.values()) {
+            out.write("# HELP " + family.name() + " " + family.help() + "\n");
+            out.write("# TYPE " + family.name() + " " + family.type() + "\n");
+            Map<String, Object> sorted = new TreeMap<>(family.metrics());
+            for (Map.Entry<String, Object> metric : sorted.entrySet()) {
+                write(out, family.name(), metric.getKey(), metric.getValue());
+            }
+        }
+    }
+
+    private static void write(Writer out, String name, String labels, Object metric) throws IOException {
+        if (metric instanceof Counter counter) {
+            sample(out, name, labels, Long.toString(counter.get()));
+        } else if (metric instanceof Gauge gauge) {
+            sample(out, name, labels, number(gauge.get()));
+        } else if (metric instanceof Histogram histogram) {
+            long cumulative = 0;
+            for (int i = 0; i < histogram.counts.length; i++) {
+                cumulative += histogram.counts[i].sum();
+                String bound = i < histogram.bounds.length ? number(histogram.bounds[i]) : "+Inf";
+                String bucketLabels = labels.isEmpty() ? "le=\"" + bound + "\"" : labels + ",le=\"" + bound + "\"";
+                sample(out, name + "_bucket", bucketLabels, Long.toString(cumulative));
+            }
+            sample(out, name + "_sum", labels, number(histogram.sum.sum()));
+            sample(out, name + "_count", labels, Long.toString(cumulative));
+        }
+    }
+
+    private static void sample(Writer out, String name, String labels, String value) throws IOException {
+        out.write(name);
+        if (!labels.isEmpty()) {
+            out.write("{" + labels + "}");
+        }
+        out.write(" " + value + "\n");
+    }
+
+    // without exponents, bucket bounds read like they're written
+    private static String number(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        } else if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    private static String labelText(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels are name, value pairs");
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(labels[i]).append("=\"");
+            String value = labels[i + 1];
+            for (int c = 0; c < value.length(); c++) {
+                char ch = value.charAt(c);
+                switch (ch) {
+                    case '\\' -> text.append("\\\\");
+                    case '"' -> text.append("\\\"");
+                    case '\n' -> text.append("\\n");
+                    default -> text.append(ch);
+                }
+            }
+            text.append('"');
+        }
+        return text.toString();
+    }
+}
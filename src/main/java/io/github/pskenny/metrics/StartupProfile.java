@@ -0,0 +1,191 @@
+package io.github.pskenny.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/*
+Where the time went while a repository was first read: the wall and CPU time of each phase and what each file cost to
+parse and transform.
+
+Phases are timed by the thread loading the repository. A phase started inside another one pauses it, so each phase's
+time is its own and they add up to the whole startup, time outside of any phase is "other". CPU time is the process's,
+so it includes every thread reading in parallel (and the JVM's own, like garbage collection) while the phase ran.
+
+File costs are wall time and can be recorded from any thread. A file's parse cost includes reading it from disk and its
+frontmatter, its transform cost is rendering its bases and replacing its wikilinks, over every update round. They're
+only kept when asked for, they're a few numbers for every file in the directory and are kept as long as the profile is.
+
+Nothing is recorded after finish, updates once the repository is up aren't part of startup.
+ */
+public class StartupProfile {
+    public static final int DEFAULT_SLOWEST = 20;
+    private static final String OTHER = "other";
+
+    public enum Cost { PARSE, BASES, WIKILINKS }
+
+    public record Phase(String name, double wallMillis, double cpuMillis) {}
+
+    public record FileCost(String filePath, double parseMillis, double basesMillis, double wikilinksMillis) {
+        public double transformMillis() {
+            return basesMillis + wikilinksMillis;
+        }
+    }
+
+    // cpuMillis is -1 when the JVM can't tell, files is how many had a cost recorded (none if they weren't kept)
+    public record Report(double wallMillis, double cpuMillis, List<Phase> phases, int files, double parseMillis,
+                         double basesMillis, double wikilinksMillis, List<FileCost> slowestFiles) {}
+
+    // wall and CPU nanos of each phase in the order they were first started, only touched by the loading thread
+    private final Map<String, long[]> phases = new LinkedHashMap<>();
+    private final Map<String, long[]> fileCosts = new ConcurrentHashMap<>();
+    private final boolean keepFileCosts;
+    private final long startWall;
+    private final long startCpu;
+    private String phase = OTHER;
+    private long markWall;
+    private long markCpu;
+    private long wall;
+    private long cpu;
+    private volatile boolean finished;
+
+    public StartupProfile(boolean keepFileCosts) {
+        this.keepFileCosts = keepFileCosts;
+        startWall = markWall = System.nanoTime();
+        startCpu = markCpu = processCpuNanos();
+    }
+
+    // Does the work timed as the phase, then goes back to the phase it was started in
+    public <T> T time(String name, Supplier<T> work) {
+        if (finished) {
+            return work.get();
+        }
+        String outer = charge();
+        phase = name;
+        try {
+            return work.get();
+        } finally {
+            if (!finished) {
+                charge();
+                phase = outer;
+            }
+        }
+    }
+
+    public void time(String name, Runnable work) {
+        time(name, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public void fileCost(Cost cost, String filePath, long nanos) {
+        if (finished || !keepFileCosts) {
+            return;
+        }
+        fileCosts.compute(filePath, (path, costs) -> {
+            long[] fileCost = costs != null ? costs : new long[Cost.values().length];
+            fileCost[cost.ordinal()] += nanos;
+            return fileCost;
+        });
+    }
+
+    // Ends startup, the phases' times are set as pkspkms_load_phase_seconds
+    public void finish(Metrics metrics) {
+        if (finished) {
+            return;
+        }
+        charge();
+        finished = true;
+        wall = markWall - startWall;
+        cpu = startCpu < 0 ? -1 : markCpu - startCpu;
+        phases.forEach((name, times) -> metrics.gauge("pkspkms_load_phase_seconds",
+                "Time each phase of loading the repository took", "phase", name).set(times[0] / 1e9));
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    // slowest is how many of the files that cost the most to parse and transform are in it
+    public Report report(int slowest) {
+        if (!finished) {
+            throw new IllegalStateException("Startup hasn't finished");
+        }
+        List<Phase> phaseTimes = new ArrayList<>(phases.size());
+        phases.forEach((name, times) ->
+                phaseTimes.add(new Phase(name, millis(times[0]), cpu < 0 ? -1 : millis(times[1]))));
+
+        long[] totals = new long[Cost.values().length];
+        List<FileCost> files = new ArrayList<>(fileCosts.size());
+        fileCosts.forEach((filePath, costs) -> {
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] += costs[i];
+            }
+            files.add(new FileCost(filePath, millis(costs[Cost.PARSE.ordinal()]),
+                    millis(costs[Cost.BASES.ordinal()]), millis(costs[Cost.WIKILINKS.ordinal()])));
+        });
+        files.sort(Comparator.comparingDouble((FileCost file) -> file.parseMillis() + file.transformMillis())
+                .reversed()
+                .thenComparing(FileCost::filePath));
+
+        return new Report(millis(wall), cpu < 0 ? -1 : millis(cpu), phaseTimes, files.size(),
+                millis(totals[Cost.PARSE.ordinal()]), millis(totals[Cost.BASES.ordinal()]),
+                millis(totals[Cost.WIKILINKS.ordinal()]), files.subList(0, Math.min(slowest, files.size())));
+    }
+
+    // The report as a table to print
+    public String format(int slowest) {
+        Report report = report(slowest);
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Startup took %s ms wall and %s ms CPU%n%n",
+                number(report.wallMillis()), number(report.cpuMillis())));
+        text.append(String.format("%-12s %12s %12s%n", "phase", "wall ms", "cpu ms"));
+        for (Phase phaseTime : report.phases()) {
+            text.append(String.format("%-12s %12s %12s%n",
+                    phaseTime.name(), number(phaseTime.wallMillis()), number(phaseTime.cpuMillis())));
+        }
+        text.append(String.format("%nOver %d files, on every thread: parse %s ms, bases %s ms, wikilinks %s ms%n",
+                report.files(), number(report.parseMillis()), number(report.basesMillis()),
+                number(report.wikilinksMillis())));
+        if (!report.slowestFiles().isEmpty()) {
+            text.append(String.format("%n%12s %12s %12s  %s%n", "parse ms", "bases ms", "wikilinks ms", "file"));
+            for (FileCost file : report.slowestFiles()) {
+                text.append(String.format("%12s %12s %12s  %s%n", number(file.parseMillis()),
+                        number(file.basesMillis()), number(file.wikilinksMillis()), file.filePath()));
+            }
+        }
+        return text.toString();
+    }
+
+    // Adds the time since the last mark to the current phase, returns it
+    private String charge() {
+        long nowWall = System.nanoTime();
+        long nowCpu = processCpuNanos();
+        long[] times = phases.computeIfAbsent(phase, name -> new long[2]);
+        times[0] += nowWall - markWall;
+        times[1] += nowCpu - markCpu;
+        markWall = nowWall;
+        markCpu = nowCpu;
+        return phase;
+    }
+
+    // -1 if it isn't available
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean sunOs) {
+            return sunOs.getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e4) / 100.0;
+    }
+
+    private static String number(double millis) {
+        return millis < 0 ? "-" : String.format(Locale.ROOT, "%.2f", millis);
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.pskenny.repo;
+
+import java.util.*;
+
+/*
+Which files have bases and which properties of other files those bases read, so a change to some properties only
+re-renders the bases reading them. A file whose bases could read any property (see LuaBaseProcessor.properties), or
+that was restored from a snapshot without being rendered since, is re-rendered for every change.
+ */
+class BaseDependencies {
+    private final Map<String, Set<String>> basesByProperty = new HashMap<>();
+    private final Map<String, Set<String>> propertiesByBase = new HashMap<>();
+    private final Set<String> basesReadingAnything = new HashSet<>();
+
+    // properties is null if the file's bases could read any property
+    void set(String filePath, Set<String> properties) {
+        remove(filePath);
+        if (properties == null) {
+            basesReadingAnything.add(filePath);
+            return;
+        }
+        propertiesByBase.put(filePath, Set.copyOf(properties));
+        properties.forEach(property ->
+                basesByProperty.computeIfAbsent(property, p -> new HashSet<>()).add(filePath));
+    }
+
+    void remove(String filePath) {
+        basesReadingAnything.remove(filePath);
+        Set<String> properties = propertiesByBase.remove(filePath);
+        if (properties == null) {
+            return;
+        }
+        properties.forEach(property -> {
+            Set<String> bases = basesByProperty.get(property);
+            bases.remove(filePath);
+            if (bases.isEmpty()) {
+                basesByProperty.remove(property);
+            }
+        });
+    }
+
+    boolean contains(String filePath) {
+        return basesReadingAnything.contains(filePath) || propertiesByBase.containsKey(filePath);
+    }
+
+    int size() {
+        return basesReadingAnything.size() + propertiesByBase.size();
+    }
+
+    // Every file with bases if changedProperties is null, when which changed isn't known (files added or removed)
+    Set<String> basesReading(Set<String> changedProperties) {
+        if (changedProperties == null) {
+            Set<String> bases = new HashSet<>(basesReadingAnything);
+            bases.addAll(propertiesByBase.keySet());
+            return bases;
+        }
+        Set<String> bases = new HashSet<>(basesReadingAnything);
+        changedProperties.forEach(property -> bases.addAll(basesByProperty.getOrDefault(property, Set.of())));
+        return bases;
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.pskenny.repo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Where the next page of a search starts, the id of the last file sent. Only good for the repository generation it was
+// made in, after an update the client has to start again.
+public record Cursor(long generation, int lastId) {
+
+    public String encode() {
+        String cursor = generation + "." + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // throws IllegalArgumentException if it isn't a cursor from encode
+    public static Cursor decode(String encoded) {
+        String cursor = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+        int dot = cursor.indexOf('.');
+        if (dot < 0) {
+            throw new IllegalArgumentException("Not a cursor: " + encoded);
+        }
+        try {
+            return new Cursor(Long.parseLong(cursor.substring(0, dot)), Integer.parseInt(cursor.substring(dot + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a cursor: " + encoded, e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.pskenny.repo;
+
+import io.github.pskenny.io.PksFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Reads a directory tree on a fork-join pool. Every subdirectory becomes its own task and the regular files in a
+// directory are split into batches, so idle workers steal whatever is left, be it traversal or parsing.
+// Mirrors Files.find(): symbolic links aren't followed and only regular files are read.
+class DirectoryReadTask extends RecursiveAction {
+    private static final int FILES_PER_TASK = 16;
+
+    private final Path path;
+    private final Function<Path, PksFile> reader;
+    private final Predicate<Path> skipDirectory;
+    private final ConcurrentMap<String, PksFile> pksFiles;
+
+    DirectoryReadTask(Path path, Function<Path, PksFile> reader, Predicate<Path> skipDirectory,
+                      ConcurrentMap<String, PksFile> pksFiles) {
+        this.path = path;
+        this.reader = reader;
+        this.skipDirectory = skipDirectory;
+        this.pksFiles = pksFiles;
+    }
+
+    @Override
+    protected void compute() {
+        List<RecursiveAction> tasks = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+            for (Path entry : entries) {
+                BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isDirectory()) {
+                    if (!skipDirectory.test(entry)) {
+                        tasks.add(new DirectoryReadTask(entry, reader, skipDirectory, pksFiles));
+                    }
+                } else if (attributes.isRegularFile()) {
+                    files.add(entry);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (!files.isEmpty()) {
+            tasks.add(new FileParseTask(files, 0, files.size()));
+        }
+        invokeAll(tasks);
+    }
+
+    private class FileParseTask extends RecursiveAction {
+        private final List<Path> files;
+        private final int start;
+        private final int end;
+
+        FileParseTask(List<Path> files, int start, int end) {
+            this.files = files;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > FILES_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new FileParseTask(files, start, middle), new FileParseTask(files, middle, end));
+                return;
+            }
+
+            for (int i = start; i < end; i++) {
+                PksFile pksFile = reader.apply(files.get(i));
+                if (pksFile != null) {
+                    pksFiles.put(pksFile.getFilePath(), pksFile);
+                }
+            }
+        }
+    }
+}
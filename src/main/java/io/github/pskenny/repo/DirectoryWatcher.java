@@ -0,0 +1,152 @@
+package io.github.pskenny.repo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Watches a directory tree and refreshes the repository with the files that changed. Events are collected until
+// none have come in for the debounce time, so a burst of saves or a rename (a delete and a create) is one refresh.
+public class DirectoryWatcher implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryWatcher.class);
+    // don't wait forever on a directory that never stops changing
+    private static final int MAX_DEBOUNCES = 20;
+
+    private final InMemoryFileRepository repository;
+    private final Path root;
+    private final Path dataDirectory;
+    private final long debounceMillis;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final Set<String> pendingFilePaths = new HashSet<>();
+    private final Thread thread;
+    private long firstPendingTime;
+    private volatile boolean running = true;
+
+    public DirectoryWatcher(InMemoryFileRepository repository, String directory, long debounceMillis) throws IOException {
+        this.repository = repository;
+        this.root = Paths.get(directory);
+        this.dataDirectory = root.resolve(SnapshotStore.DIRECTORY);
+        this.debounceMillis = debounceMillis;
+        this.watchService = root.getFileSystem().newWatchService();
+        registerAll(root, false);
+
+        thread = new Thread(this::run, "directory-watcher");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+        logger.info("Watching {} directories in {}", watchedDirectories.size(), root);
+    }
+
+    private void run() {
+        while (running) {
+            WatchKey key;
+            try {
+                key = pendingFilePaths.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+
+            if (key != null) {
+                handleEvents(key);
+            }
+            boolean waitedLongEnough = System.currentTimeMillis() - firstPendingTime > debounceMillis * MAX_DEBOUNCES;
+            if (!pendingFilePaths.isEmpty() && (key == null || waitedLongEnough)) {
+                refresh();
+            }
+        }
+    }
+
+    private void handleEvents(WatchKey key) {
+        Path directory = watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                logger.warn("Missed file changes in {}, checking every file", root);
+                addPending(repository.getFilePaths());
+                registerAll(root, true);
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+
+            Path path = directory.resolve((Path) event.context());
+            if (path.startsWith(dataDirectory)) {
+                continue;
+            }
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                // files can be created before the directory is registered
+                registerAll(path, true);
+            }
+            addPending(Set.of(root.relativize(path).toString()));
+        }
+
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    private void addPending(Set<String> filePaths) {
+        if (pendingFilePaths.isEmpty()) {
+            firstPendingTime = System.currentTimeMillis();
+        }
+        pendingFilePaths.addAll(filePaths);
+    }
+
+    private void refresh() {
+        Set<String> filePaths = new HashSet<>(pendingFilePaths);
+        pendingFilePaths.clear();
+        try {
+            repository.refresh(filePaths);
+        } catch (RuntimeException e) {
+            logger.error("Couldn't refresh {} changed files: {}", filePaths.size(), e.getMessage());
+        }
+    }
+
+    private void registerAll(Path start, boolean addFiles) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (dir.equals(dataDirectory)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                    watchedDirectories.put(key, dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (addFiles && attrs.isRegularFile()) {
+                        addPending(Set.of(root.relativize(file).toString()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Couldn't watch directory {}: {}", start, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watchService.close();
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,10 @@
+package io.github.pskenny.repo;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+// Size and modification time of a file when it was read, used to tell if it has changed since
+public record FileStamp(long size, long modified) {
+    public static FileStamp of(BasicFileAttributes attributes) {
+        return new FileStamp(attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+}
@@ -1,41 +1,114 @@
 package io.github.pskenny.repo;
 
 import io.github.pskenny.io.PksFile;
-import io.github.pskenny.io.Search;
+import io.github.pskenny.io.Projection;
+import io.github.pskenny.io.Query;
 import io.github.pskenny.io.parser.Parsers;
 import io.github.pskenny.io.parser.actions.BaseToMarkdownAction;
 import io.github.pskenny.io.parser.markdown.MarkdownLinkReader;
+import io.github.pskenny.io.parser.markdown.MarkdownScanner;
+import io.github.pskenny.io.parser.markdown.ScannedMarkdown;
 import io.github.pskenny.io.parser.actions.WikilinkToMarkdownLinkAction;
+import io.github.pskenny.luabase.CorpusView;
+import io.github.pskenny.metrics.Metrics;
+import io.github.pskenny.metrics.StartupProfile;
+import io.github.pskenny.repo.index.BacklinkIndex;
+import io.github.pskenny.repo.index.ChunkedArray;
+import io.github.pskenny.repo.index.PathRegistry;
+import io.github.pskenny.repo.index.PropertyIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
-import static io.github.pskenny.io.Search.parse;
-
+/*
+Files are read and updated by one thread at a time (refresh and update are synchronized) into allPksFiles and the
+indexes, which only that thread touches. At the end of each update a RepositorySnapshot of them is published and
+searches read the latest one without waiting, so a long update never holds up a request. A file readers can see is
+copied before an update changes it, see ownPublished.
+ */
 public class InMemoryFileRepository {
     private static final Logger logger = LoggerFactory.getLogger(InMemoryFileRepository.class);
 
     private final HashMap<String, PksFile> allPksFiles = new HashMap<>();
+    private final Map<String, FileStamp> fileStamps = new ConcurrentHashMap<>();
+    // files which have been transformed using other files, they have to be transformed again when those change
+    private final BaseDependencies baseDependencies = new BaseDependencies();
+    private final Set<String> filesWithWikilinks = new HashSet<>();
     private final String directory;
+    private final Path dataDirectory;
+    private final int parallelism;
     private final Parsers parsers = new Parsers();
     private final WikilinkResolver wikilinkResolver;
+    private int staleSnapshotFiles = 0;
+    private final PathRegistry pathRegistry = new PathRegistry();
+    private final PropertyIndex propertyIndex = new PropertyIndex(pathRegistry);
+    private final BacklinkIndex backlinkIndex = new BacklinkIndex();
+    // the indexed files by id, what snapshots have as their files
+    private final ChunkedArray<PksFile> indexedFiles = new ChunkedArray<>();
+    // bumped by every update, anything made from the files before it is out of date
+    private long generation = 0;
+    private volatile RepositorySnapshot published;
+    // timed from the start to the end of the constructor
+    private final StartupProfile startupProfile;
+    private final Metrics metrics;
 
     private final MarkdownLinkReader markdownLinkReader = new MarkdownLinkReader();
 
     public InMemoryFileRepository(String directory) {
+        this(directory, 1);
+    }
+
+    public InMemoryFileRepository(String directory, int parallelism) {
+        this(directory, parallelism, null);
+    }
+
+    public InMemoryFileRepository(String directory, int parallelism, Path snapshot) {
+        this(directory, parallelism, snapshot, new Metrics(), false);
+    }
+
+    // parallelism of 1 reads the directory sequentially, less than 1 uses every available processor.
+    // snapshot is loaded from, if it's there, and saved to after reading. null to read everything and save nothing.
+    // Loading and updates are recorded to metrics. profileFiles keeps what each file cost to read in the startup
+    // profile, not just the phases.
+    public InMemoryFileRepository(String directory, int parallelism, Path snapshot, Metrics metrics,
+                                  boolean profileFiles) {
+        this.startupProfile = new StartupProfile(profileFiles);
         this.directory = directory;
+        this.metrics = metrics;
+        this.dataDirectory = Paths.get(directory, SnapshotStore.DIRECTORY);
+        this.parallelism = parallelism < 1 ? Runtime.getRuntime().availableProcessors() : parallelism;
         wikilinkResolver = new WikilinkResolver();
 
         long startTime = System.currentTimeMillis();
 
-        initialRead();
-        update();
+        checkDirectory();
+        boolean snapshotUpToDate = false;
+        boolean snapshotLoaded = false;
+        if (snapshot != null) {
+            // bringing the snapshot up to date is timed as the phases it's made of
+            snapshotLoaded = startupProfile.time("snapshot", () -> snapshotRead(snapshot));
+        }
+        if (!snapshotLoaded) {
+            initialRead();
+            update();
+        } else {
+            snapshotUpToDate = staleSnapshotFiles == 0;
+        }
+        if (published == null) {
+            publish();
+        }
+        if (snapshot != null && !snapshotUpToDate) {
+            startupProfile.time("save", () -> saveSnapshot(snapshot));
+        }
+        startupProfile.finish(metrics);
         logger.debug("Complete init. All pksfiles: {}", allPksFiles.size());
         long endTime = System.currentTimeMillis();
         long durationMs = endTime - startTime;
@@ -45,11 +118,45 @@ public class InMemoryFileRepository {
         logger.debug("Initialisation time: {}s {}ms", seconds, milliseconds);
     }
 
+    // What reading the directory when the repository was made spent its time on
+    public StartupProfile getStartupProfile() {
+        return startupProfile;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    // Whether the directory is read on more than one thread. Decided by parallelism once it's been normalised, the
+    // constructor's parameter is still 0 when every processor is used.
+    boolean readsInParallel() {
+        return parallelism > 1;
+    }
+
     public HashMap<String, PksFile> getAllPksFiles() {
         return allPksFiles;
     }
 
-    private void initialRead() {
+    // The files as of the last update, take one for everything a request reads so it all comes from the same files
+    public RepositorySnapshot snapshot() {
+        return published;
+    }
+
+    // Only ever goes up while the repository is in memory
+    public long getGeneration() {
+        return published.generation();
+    }
+
+    // milliseconds since the epoch in whole seconds, see RepositorySnapshot.lastModified
+    public long getLastModified() {
+        return published.lastModified();
+    }
+
+    public synchronized Set<String> getFilePaths() {
+        return new HashSet<>(allPksFiles.keySet());
+    }
+
+    private void checkDirectory() {
         File dir = new File(directory);
         if (!dir.exists()) {
             logger.error("Directory doesn't exist: {}", dir);
@@ -60,17 +167,295 @@ public class InMemoryFileRepository {
             logger.error("Directory must not be a file: {}", dir);
             System.exit(1);
         }
+    }
 
+    private void initialRead() {
+        // walking the directory and parsing the files, they're done together
+        startupProfile.time("read", readsInParallel() ? this::parallelRead : this::sequentialRead);
+        startupProfile.time("wikilinks", () -> wikilinkResolver.initialise(allPksFiles));
+    }
+
+    private void sequentialRead() {
         try {
-            Files.find(Paths.get(directory), Integer.MAX_VALUE, (filePath, fileAttr) -> fileAttr.isRegularFile())
-                    .map(file -> parsers.initialReadOnlyParse(file, directory))
+            Files.find(Paths.get(directory), Integer.MAX_VALUE, (filePath, fileAttr) -> fileAttr.isRegularFile()
+                            && !filePath.startsWith(dataDirectory))
+                    .map(this::readFile)
                     .filter(Objects::nonNull)
                     .forEach(pksFile -> allPksFiles.put(pksFile.getFilePath(), pksFile));
         } catch (IOException e) {
             logger.error("Couldn't read files in directory {}", directory);
             System.exit(1);
         }
-        wikilinkResolver.initialise(allPksFiles);
+    }
+
+    private void parallelRead() {
+        ConcurrentHashMap<String, PksFile> readPksFiles = new ConcurrentHashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DirectoryReadTask(Paths.get(directory), this::readFile, dataDirectory::equals, readPksFiles));
+        } catch (UncheckedIOException e) {
+            logger.error("Couldn't read files in directory {}", directory);
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+        logger.debug("Read {} files using {} threads", readPksFiles.size(), parallelism);
+        allPksFiles.putAll(readPksFiles);
+    }
+
+    private List<PksFile> readFiles(Collection<Path> paths) {
+        return startupProfile.time("read", () -> {
+            if (readsInParallel() && paths.size() > 1) {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    return pool.submit(() -> paths.parallelStream()
+                                    .map(this::readFile)
+                                    .filter(Objects::nonNull)
+                                    .toList())
+                            .join();
+                } finally {
+                    pool.shutdown();
+                }
+            }
+            return paths.stream()
+                    .map(this::readFile)
+                    .filter(Objects::nonNull)
+                    .toList();
+        });
+    }
+
+    // stamp is taken before parsing so a change while reading is picked up next time
+    private PksFile readFile(Path path) {
+        FileStamp stamp;
+        try {
+            stamp = FileStamp.of(Files.readAttributes(path, BasicFileAttributes.class));
+        } catch (IOException e) {
+            logger.error("Couldn't read attributes of file: {}", path);
+            return null;
+        }
+        long parseStart = System.nanoTime();
+        PksFile pksFile = parsers.initialReadOnlyParse(path, directory);
+        if (pksFile != null) {
+            fileStamps.put(pksFile.getFilePath(), stamp);
+            startupProfile.fileCost(StartupProfile.Cost.PARSE, pksFile.getFilePath(), System.nanoTime() - parseStart);
+        }
+        return pksFile;
+    }
+
+    // Returns false if the snapshot couldn't be used. Files whose size or modification time doesn't match the
+    // snapshot are read again, along with files transformed using them.
+    private boolean snapshotRead(Path snapshotPath) {
+        SnapshotStore.Snapshot snapshot = SnapshotStore.read(snapshotPath, directory);
+        if (snapshot == null) {
+            return false;
+        }
+
+        Map<String, SnapshotStore.Entry> entries = new HashMap<>();
+        snapshot.entries().forEach(entry -> entries.put(entry.pksFile().getFilePath(), entry));
+
+        Path root = Paths.get(directory);
+        List<Path> staleFiles = new ArrayList<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return dir.equals(dataDirectory) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!attrs.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    SnapshotStore.Entry entry = entries.remove(root.relativize(file).toString());
+                    if (entry != null && entry.stamp().equals(FileStamp.of(attrs))) {
+                        restore(entry);
+                    } else {
+                        staleFiles.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Couldn't read files in directory {}", directory);
+            System.exit(1);
+        }
+
+        wikilinkResolver.restore(snapshot.wikilinks());
+        Set<String> changedFilePaths = new HashSet<>();
+        readFiles(staleFiles).forEach(pksFile -> {
+            allPksFiles.put(pksFile.getFilePath(), pksFile);
+            changedFilePaths.add(pksFile.getFilePath());
+        });
+        // after every file is there so links resolve to them
+        index(allPksFiles.keySet());
+        staleSnapshotFiles = staleFiles.size() + entries.size();
+        logger.debug("Loaded {} files from snapshot, {} changed and {} removed since",
+                allPksFiles.size() - changedFilePaths.size(), staleFiles.size(), entries.size());
+
+        if (staleSnapshotFiles > 0) {
+            // what changed in the stale files isn't known, their old versions weren't restored
+            reindex(changedFilePaths, entries.keySet(), null);
+        }
+        return true;
+    }
+
+    private void restore(SnapshotStore.Entry entry) {
+        String filePath = entry.pksFile().getFilePath();
+        allPksFiles.put(filePath, entry.pksFile());
+        fileStamps.put(filePath, entry.stamp());
+        if ((entry.flags() & SnapshotStore.HAS_BASES) != 0) {
+            // which properties its bases read wasn't saved, it's rendered again for any change until it has been
+            baseDependencies.set(filePath, null);
+        }
+        if ((entry.flags() & SnapshotStore.HAS_WIKILINKS) != 0) {
+            filesWithWikilinks.add(filePath);
+        }
+    }
+
+    public void saveSnapshot(Path snapshot) {
+        List<SnapshotStore.Entry> entries = new ArrayList<>(allPksFiles.size());
+        allPksFiles.forEach((filePath, pksFile) -> {
+            FileStamp stamp = fileStamps.get(filePath);
+            if (stamp == null) {
+                return;
+            }
+            byte flags = 0;
+            if (baseDependencies.contains(filePath)) {
+                flags |= SnapshotStore.HAS_BASES;
+            }
+            if (filesWithWikilinks.contains(filePath)) {
+                flags |= SnapshotStore.HAS_WIKILINKS;
+            }
+            entries.add(new SnapshotStore.Entry(pksFile, stamp, flags));
+        });
+
+        try {
+            SnapshotStore.write(snapshot, directory, new SnapshotStore.Snapshot(entries, wikilinkResolver.getResolvedLinks()));
+            logger.debug("Saved snapshot of {} files to {}", entries.size(), snapshot);
+        } catch (IOException e) {
+            logger.error("Couldn't save snapshot to {}: {}", snapshot, e.getMessage());
+        }
+    }
+
+    // Brings the repository up to date after the changed files have been read again and the removed files deleted.
+    // Files with bases reading any of the changed properties (all of them if that's null) and, if wikilinks now resolve
+    // differently, files with wikilinks are read again from disk too, their content was transformed using the old files.
+    private void reindex(Set<String> changedFilePaths, Set<String> removedFilePaths, Set<String> changedProperties) {
+        removedFilePaths.forEach(this::forget);
+
+        Map<String, Set<String>> previousWikilinks = new HashMap<>(wikilinkResolver.getResolvedLinks());
+        startupProfile.time("wikilinks", () -> wikilinkResolver.initialise(allPksFiles));
+
+        Set<String> filePathsToCheck = new HashSet<>(changedFilePaths);
+        Set<String> bases = baseDependencies.basesReading(removedFilePaths.isEmpty() ? changedProperties : null);
+        logger.debug("Rendering {} of {} files with bases again", bases.size(), baseDependencies.size());
+        filePathsToCheck.addAll(bases);
+        if (!previousWikilinks.equals(wikilinkResolver.getResolvedLinks())) {
+            filePathsToCheck.addAll(filesWithWikilinks);
+        }
+
+        List<Path> dependants = new ArrayList<>();
+        filePathsToCheck.stream()
+                .filter(filePath -> !changedFilePaths.contains(filePath))
+                .forEach(filePath -> {
+                    forget(filePath);
+                    dependants.add(Paths.get(directory, filePath));
+                });
+        readFiles(dependants).forEach(pksFile -> allPksFiles.put(pksFile.getFilePath(), pksFile));
+
+        filePathsToCheck.retainAll(allPksFiles.keySet());
+        filePathsToCheck.forEach(filePath -> {
+            baseDependencies.remove(filePath);
+            filesWithWikilinks.remove(filePath);
+        });
+        update(1, filePathsToCheck);
+    }
+
+    // Reads the given files (relative to the directory) again if they've changed. Paths that don't exist anymore are
+    // removed, along with any files under them if they were directories.
+    public synchronized void refresh(Set<String> filePaths) {
+        Set<String> removedFilePaths = new HashSet<>();
+        Map<Path, String> changedFiles = new HashMap<>();
+        for (String filePath : filePaths) {
+            Path path = Paths.get(directory, filePath);
+            if (path.startsWith(dataDirectory)) {
+                continue;
+            }
+            if (Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+                if (!isUpToDate(filePath, path)) {
+                    changedFiles.put(path, filePath);
+                }
+            } else if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                String directoryPrefix = filePath + File.separator;
+                allPksFiles.keySet().stream()
+                        .filter(knownFilePath -> knownFilePath.equals(filePath) || knownFilePath.startsWith(directoryPrefix))
+                        .forEach(removedFilePaths::add);
+            }
+        }
+        if (changedFiles.isEmpty() && removedFilePaths.isEmpty()) {
+            return;
+        }
+
+        Set<String> changedFilePaths = new HashSet<>();
+        // null once a file is new, its properties can change what any base lists
+        Set<String> changedProperties = new HashSet<>();
+        for (PksFile pksFile : readFiles(changedFiles.keySet())) {
+            PksFile previous = allPksFiles.put(pksFile.getFilePath(), pksFile);
+            changedFilePaths.add(pksFile.getFilePath());
+            if (previous == null) {
+                changedProperties = null;
+            } else if (changedProperties != null) {
+                changedProperties.addAll(changedProperties(previous, pksFile));
+            }
+        }
+        // couldn't be read anymore
+        changedFiles.values().stream()
+                .filter(filePath -> !changedFilePaths.contains(filePath) && allPksFiles.containsKey(filePath))
+                .forEach(removedFilePaths::add);
+
+        reindex(changedFilePaths, removedFilePaths, changedProperties);
+        logger.info("Refreshed {} changed and {} removed files", changedFilePaths.size(), removedFilePaths.size());
+    }
+
+    // The properties that were added, removed or have a different value. The previous file has been updated, its
+    // transformed content and links differ from a file just read even when the file hasn't changed. Frontmatter keys
+    // can be numbers or dates too, those are given as their text.
+    private static Set<String> changedProperties(PksFile previous, PksFile current) {
+        Map<?, ?> previousProperties = previous.getProperties();
+        Map<?, ?> currentProperties = current.getProperties();
+        Set<String> changed = new HashSet<>();
+        previousProperties.forEach((property, value) -> {
+            if (!Objects.equals(value, currentProperties.get(property))) {
+                changed.add(String.valueOf(property));
+            }
+        });
+        currentProperties.keySet().stream()
+                .filter(property -> !previousProperties.containsKey(property))
+                .forEach(property -> changed.add(String.valueOf(property)));
+        return changed;
+    }
+
+    private boolean isUpToDate(String filePath, Path path) {
+        FileStamp stamp = fileStamps.get(filePath);
+        try {
+            return stamp != null && stamp.equals(FileStamp.of(Files.readAttributes(path, BasicFileAttributes.class)));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void forget(String filePath) {
+        allPksFiles.remove(filePath);
+        propertyIndex.remove(filePath);
+        int id = pathRegistry.id(filePath);
+        if (id >= 0) {
+            backlinkIndex.remove(id);
+            indexedFiles.set(id, null);
+        }
+        fileStamps.remove(filePath);
+        baseDependencies.remove(filePath);
+        filesWithWikilinks.remove(filePath);
     }
 
     public void update() {
@@ -81,28 +466,149 @@ public class InMemoryFileRepository {
         this.update(maxRound, allPksFiles.keySet());
     }
 
-    public void update(int maxRound, Set<String> filePathsToCheck) {
+    public synchronized void update(int maxRound, Set<String> filePathsToCheck) {
+        long updateStart = System.nanoTime();
+        Set<String> checkedFiles = new HashSet<>();
         int currentRound = 0;
         do {
-            Set<String> newlyChanged = new HashSet<>();
-            Set<String> dynamicChanged = maybeReplaceDynamicContent(filePathsToCheck);
-            newlyChanged.addAll(dynamicChanged);
-            Set<String> readChanges = readChangesToFiles(filePathsToCheck);
-            newlyChanged.addAll(readChanges);
+            ownPublished(filePathsToCheck);
+            checkedFiles.addAll(filePathsToCheck);
+            Set<String> toCheck = filePathsToCheck;
+            // files aren't added or removed during a round, every base in it is rendered over the same files
+            CorpusView corpus = new CorpusView(generation + 1, currentRound + 1, allPksFiles);
+            Set<String> newlyChanged = new HashSet<>(
+                    startupProfile.time("transform", () -> maybeReplaceDynamicContent(toCheck, corpus)));
+            newlyChanged.addAll(startupProfile.time("links", () -> readChangesToFiles(toCheck)));
             filePathsToCheck = newlyChanged;
 
             logger.debug("{} changed files on update round {}", filePathsToCheck.size(), currentRound + 1);
         } while (++currentRound < maxRound && !filePathsToCheck.isEmpty());
+
+        // scans are only needed while updating, don't keep a second copy of every file's content
+        for (String filePath : checkedFiles) {
+            PksFile pksFile = allPksFiles.get(filePath);
+            if (pksFile != null) {
+                pksFile.setMarkdown(null);
+            }
+        }
+        index(checkedFiles);
+        publish();
+
+        metrics.timer("pkspkms_update_duration_seconds", "Time to update and index changed files")
+                .observeNanos(System.nanoTime() - updateStart);
+        metrics.counter("pkspkms_update_rounds_total", "Rounds of transforming files run by updates")
+                .add(currentRound);
+        metrics.counter("pkspkms_updated_files_total", "Files checked by updates").add(checkedFiles.size());
+    }
+
+    // Files are changed in place while they're updated, one a published snapshot has is copied to change instead
+    private void ownPublished(Set<String> filePaths) {
+        if (published == null) {
+            return;
+        }
+        for (String filePath : filePaths) {
+            PksFile pksFile = allPksFiles.get(filePath);
+            if (pksFile != null && published.file(filePath) == pksFile) {
+                allPksFiles.put(filePath, new PksFile(pksFile));
+            }
+        }
+    }
+
+    // Swaps in a snapshot of the files and indexes as they are now, requests after this read it
+    private void publish() {
+        generation++;
+        // HTTP dates are to the second, each snapshot's is a second after the last one's at least so an
+        // If-Modified-Since from the one before never matches it
+        long lastModified = System.currentTimeMillis() / 1000 * 1000;
+        if (published != null) {
+            lastModified = Math.max(lastModified, published.lastModified() + 1000);
+        }
+        published = new RepositorySnapshot(generation, lastModified, pathRegistry,
+                indexedFiles.snapshot(), propertyIndex.snapshot(), backlinkIndex.snapshot());
+    }
+
+    // Adds the files to the property and backlink indexes with their current properties. Links are only read (by
+    // readChangesToFiles or from a snapshot) for files being indexed, so only their backlinks change.
+    private void index(Set<String> filePaths) {
+        startupProfile.time("index", () -> {
+            pathRegistry.registerAll(filePaths);
+            for (String filePath : filePaths) {
+                PksFile pksFile = allPksFiles.get(filePath);
+                if (pksFile != null) {
+                    indexedFiles.set(pathRegistry.id(filePath), pksFile);
+                    propertyIndex.add(filePath, pksFile.getProperties());
+                    int[] linkIds = linkIds(filePath, pksFile.getProperties().get("links"));
+                    backlinkIndex.setLinks(pathRegistry.id(filePath), linkIds);
+                }
+            }
+        });
+    }
+
+    // Links are resolved to paths in the directory, they get an id even if there's no file there yet
+    private int[] linkIds(String filePath, Object links) {
+        if (links instanceof String link) {
+            links = List.of(link);
+        }
+        if (!(links instanceof Collection<?> linkCollection)) {
+            return new int[0];
+        }
+        int[] ids = new int[linkCollection.size()];
+        int count = 0;
+        for (Object link : linkCollection) {
+            String linkedPath = link instanceof String linkText ? resolveLink(filePath, linkText) : null;
+            if (linkedPath != null) {
+                ids[count++] = pathRegistry.register(linkedPath);
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    /*
+    The path a link from the file is to. A leading slash is from the top of the directory, ./ and ../ from the file's
+    folder. Anything else is from the file's folder if there's a file there and from the top of the directory if not,
+    links are written both ways. Headings (#...) are dropped. null if it's outside the directory or in the same file.
+     */
+    private String resolveLink(String filePath, String link) {
+        int heading = link.indexOf('#');
+        if (heading == 0) {
+            return null;
+        } else if (heading > 0) {
+            link = link.substring(0, heading);
+        }
+        if (link.startsWith("/")) {
+            return PathRegistry.canonical(link);
+        }
+        int folderEnd = filePath.lastIndexOf('/');
+        if (folderEnd < 0) {
+            return PathRegistry.canonical(link);
+        }
+        String fromFolder = PathRegistry.canonical(filePath.substring(0, folderEnd + 1) + link);
+        if (link.startsWith("./") || link.startsWith("../")
+                || (fromFolder != null && allPksFiles.containsKey(fromFolder))) {
+            return fromFolder;
+        }
+        return PathRegistry.canonical(link);
     }
 
-    private Set<String> maybeReplaceDynamicContent(Set<String> files) {
+    private Set<String> maybeReplaceDynamicContent(Set<String> files, CorpusView corpus) {
         Set<String> changedFiles = new HashSet<>();
         for (String file : files) {
             PksFile pksFile = allPksFiles.get(file);
-            BaseToMarkdownAction baseToMarkdownAction = new BaseToMarkdownAction();
-            Set<String> baseChangedFiles = baseToMarkdownAction.act(pksFile, allPksFiles);
+            long basesStart = System.nanoTime();
+            BaseToMarkdownAction baseToMarkdownAction = new BaseToMarkdownAction(metrics);
+            Set<String> baseChangedFiles = baseToMarkdownAction.act(pksFile, corpus);
+            long wikilinksStart = System.nanoTime();
             WikilinkToMarkdownLinkAction wikilinkToMarkdownLinkAction = new WikilinkToMarkdownLinkAction();
             Set<String> wikilinkChangedFiles = wikilinkToMarkdownLinkAction.act(pksFile, wikilinkResolver);
+            startupProfile.fileCost(StartupProfile.Cost.BASES, file, wikilinksStart - basesStart);
+            startupProfile.fileCost(StartupProfile.Cost.WIKILINKS, file, System.nanoTime() - wikilinksStart);
+            // even if none rendered, they're rendered again when the files they read change
+            if (baseToMarkdownAction.foundBases()) {
+                baseDependencies.set(file, baseToMarkdownAction.readProperties());
+            }
+            if (wikilinkToMarkdownLinkAction.foundWikilinks()) {
+                filesWithWikilinks.add(file);
+            }
 
             Set<String> newlyChangedFiles = new HashSet<>();
             if (!baseChangedFiles.isEmpty()) {
@@ -131,21 +637,17 @@ public class InMemoryFileRepository {
             }
             // 1. Find Markdown links in file content
             PksFile pksFile = allPksFiles.get(file);
-            String content;
-            if (pksFile.getProperties().containsKey("content")) {
-                content = (String) pksFile.getProperties().get("content");
-            } else {
-                try {
-                    // Read content from file path (most reliable source)
-                    content = Files.readString(pksFile.getFile().toPath(), StandardCharsets.UTF_8);
-                } catch (IOException ex) {
-                    logger.error("Error reading file {}: {}", pksFile.getFile().getAbsolutePath(), ex.getMessage());
-                    return Set.of();
-                }
+            ScannedMarkdown markdown;
+            try {
+                // the file's scan, of the transformed content if there is any
+                markdown = MarkdownScanner.scan(pksFile);
+            } catch (IOException ex) {
+                logger.error("Error reading file {}: {}", pksFile.getFile().getAbsolutePath(), ex.getMessage());
+                return Set.of();
             }
             // replace links in properties
             List<String> oldLinks = (List<String>) pksFile.getProperties().get("links");
-            List<String> newLinks = markdownLinkReader.getMarkdownLinksProperties(content);
+            List<String> newLinks = markdownLinkReader.getMarkdownLinksProperties(markdown);
 
             if (oldLinks == null) {
                 if (!newLinks.isEmpty()) {
@@ -169,52 +671,23 @@ public class InMemoryFileRepository {
     }
 
     public Map<String, PksFile> search(String query) {
-        return search(parse(query));
+        return search(Query.compile(query), Projection.ALL);
     }
 
     public Map<String, PksFile> search(Map<String, List<String>> params) {
-        Map<String, PksFile> matchedFiles = new HashMap<>();
-        getAllPksFiles().values().forEach(pksFile -> {
-            if (Search.matchesProperties(pksFile, params)) {
-                matchedFiles.put(pksFile.getFilePath(), new PksFile(pksFile));
-            }
-        });
-        addBacklinks(matchedFiles);
-
-        return matchedFiles;
-    }
-
-    // backlinks done as a post result task instead of being tracked throughout
-    private void addBacklinks(Map<String, PksFile> pksFiles) {
-        logger.warn("Backlinks not implemented!");
-        /*
-        pksFiles.forEach((filePath, file) -> {
-            if (file.getProperties().get("links") instanceof ArrayList) {
-                ArrayList<String> links = (ArrayList<String>) file.getProperties().get("links");
-                if (links != null) {
-                    for (String link : links) {
-                        // check absolute paths
-                        PksFile linkedFile = allPksFiles.get(link);
-                        if (linkedFile != null) {
-                            linkedFile.getProperties().computeIfAbsent("backlinks", k -> new ArrayList<String>());
-                            ((ArrayList<String>) linkedFile.getProperties().get("backlinks")).add(file.getFilePath());
-                        }
-                        // TODO: check relative path?
-                    }
-                }
-            } else {
-                HashSet<String> links = (HashSet<String>) file.getProperties().get("links");
-                if (links != null) {
-                    for (String link : links) {
-                        PksFile linkedFile = allPksFiles.get(link);
-                        if (linkedFile != null) {
-                            linkedFile.getProperties().computeIfAbsent("backlinks", k -> new HashSet<String>());
-                            ((Collection<String>) linkedFile.getProperties().get("backlinks")).add(file.getFilePath());
-                        }
-                    }
-                }
-            }
-        });
-        */
+        return search(Query.compile(params), Projection.ALL);
+    }
+
+    // The matched files in the latest snapshot, see RepositorySnapshot.search
+    public Map<String, PksFile> search(Query query, Projection projection) {
+        return published.search(query, projection);
+    }
+
+    public Page page(Query query, Projection projection, Cursor after, int limit, boolean descending) {
+        return published.page(query, projection, after, limit, descending);
+    }
+
+    public Neighbourhood neighbourhood(Query query, int depth, int maxNodes, Projection projection) {
+        return published.neighbourhood(query, depth, maxNodes, projection);
     }
 }
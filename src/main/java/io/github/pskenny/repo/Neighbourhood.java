@@ -0,0 +1,8 @@
+package io.github.pskenny.repo;
+
+import io.github.pskenny.io.PksFile;
+
+import java.util.List;
+
+// The files around the files matching a search, nearest first. truncated if there were more than were asked for
+public record Neighbourhood(List<PksFile> files, boolean truncated) {}
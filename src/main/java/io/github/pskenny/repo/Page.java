@@ -0,0 +1,8 @@
+package io.github.pskenny.repo;
+
+import io.github.pskenny.io.PksFile;
+
+import java.util.List;
+
+// Some of the files matching a search in id order. total is how many matched altogether, next is null on the last page
+public record Page(List<PksFile> files, int total, Cursor next) {}
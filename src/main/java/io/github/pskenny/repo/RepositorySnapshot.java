@@ -0,0 +1,164 @@
+package io.github.pskenny.repo;
+
+import io.github.pskenny.io.PksFile;
+import io.github.pskenny.io.Projection;
+import io.github.pskenny.io.Query;
+import io.github.pskenny.repo.index.BacklinkIndex;
+import io.github.pskenny.repo.index.ChunkedArray;
+import io.github.pskenny.repo.index.FileGraph;
+import io.github.pskenny.repo.index.PathRegistry;
+import io.github.pskenny.repo.index.PropertyIndex;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.*;
+
+/*
+The repository's files and indexes as they were after one update. Nothing in it changes, so a request takes one and
+reads it on its own thread for as long as it needs while the next update makes the next snapshot. Files that didn't
+change are the same PksFiles, and the indexes share everything the update didn't touch, with the snapshot before.
+ */
+public final class RepositorySnapshot {
+    private final long generation;
+    private final long lastModified;
+    private final PathRegistry pathRegistry;
+    private final ChunkedArray<PksFile> files;
+    private final PropertyIndex propertyIndex;
+    private final BacklinkIndex backlinkIndex;
+    // built the first time a neighbourhood is asked for
+    private volatile FileGraph fileGraph;
+
+    RepositorySnapshot(long generation, long lastModified, PathRegistry pathRegistry, ChunkedArray<PksFile> files,
+                       PropertyIndex propertyIndex, BacklinkIndex backlinkIndex) {
+        this.generation = generation;
+        this.lastModified = lastModified;
+        this.pathRegistry = pathRegistry;
+        this.files = files;
+        this.propertyIndex = propertyIndex;
+        this.backlinkIndex = backlinkIndex;
+    }
+
+    // Goes up by one for every update, anything made from an older snapshot is out of date
+    public long generation() {
+        return generation;
+    }
+
+    // milliseconds since the epoch, of the update or when the repository was made. It's in whole seconds and later than
+    // the snapshot before's, updates in the same second are a second apart (so it can be a little ahead of the clock).
+    public long lastModified() {
+        return lastModified;
+    }
+
+    // number of files
+    public int size() {
+        return propertyIndex.size();
+    }
+
+    public int tagCount() {
+        return propertyIndex.tags().size();
+    }
+
+    // ids given out to paths, files or not, by this snapshot or after
+    public int pathCount() {
+        return pathRegistry.size();
+    }
+
+    // null if there's no file at the path
+    public PksFile file(String filePath) {
+        int id = pathRegistry.id(filePath);
+        return id < 0 ? null : files.get(id);
+    }
+
+    // The matched files are read-only views of the snapshot's files with only the projected properties
+    public Map<String, PksFile> search(Query query, Projection projection) {
+        Map<String, PksFile> matchedFiles = new HashMap<>();
+        propertyIndex.search(query).forEach((int id) -> {
+            PksFile pksFile = files.get(id);
+            matchedFiles.put(pksFile.getFilePath(), view(id, pksFile, projection));
+        });
+
+        return matchedFiles;
+    }
+
+    /*
+    Up to limit matched files after the cursor (null for the first page) in order of their ids, descending for newest
+    first. Ids are given to paths in order when the directory is first read and to new files as they turn up, they're
+    never reused so the order of files doesn't change between pages. Only the files on the page are looked up.
+     */
+    public Page page(Query query, Projection projection, Cursor after, int limit, boolean descending) {
+        RoaringBitmap matched = propertyIndex.search(query);
+        List<PksFile> pageFiles = new ArrayList<>(Math.min(limit, matched.getCardinality()));
+        long id = after == null ? first(matched, descending) : next(matched, after.lastId(), descending);
+        int lastId = -1;
+        while (id >= 0 && pageFiles.size() < limit) {
+            lastId = (int) id;
+            pageFiles.add(view(lastId, files.get(lastId), projection));
+            id = next(matched, lastId, descending);
+        }
+
+        Cursor next = id >= 0 ? new Cursor(generation, lastId) : null;
+        return new Page(pageFiles, matched.getCardinality(), next);
+    }
+
+    // The files around the matched files, see FileGraph.neighbourhood for which
+    public Neighbourhood neighbourhood(Query query, int depth, int maxNodes, Projection projection) {
+        FileGraph.Neighbourhood reached = fileGraph().neighbourhood(propertyIndex.search(query), depth, maxNodes);
+        List<PksFile> reachedFiles = new ArrayList<>(reached.files().length);
+        for (int id : reached.files()) {
+            reachedFiles.add(view(id, files.get(id), projection));
+        }
+        return new Neighbourhood(reachedFiles, reached.truncated());
+    }
+
+    private FileGraph fileGraph() {
+        FileGraph graph = fileGraph;
+        if (graph != null) {
+            return graph;
+        }
+        synchronized (this) {
+            if (fileGraph == null) {
+                // ids given out after this snapshot have no file in it
+                FileGraph.Builder builder = new FileGraph.Builder(pathRegistry.size());
+                files.forEach((pksFile, id) -> {
+                    int[] links = backlinkIndex.links(id);
+                    int[] backlinks = backlinkIndex.backlinks(id);
+                    int[] linked = Arrays.copyOf(links, links.length + backlinks.length);
+                    System.arraycopy(backlinks, 0, linked, links.length, backlinks.length);
+                    builder.addFile(id, linked);
+                });
+                propertyIndex.tags().forEach((tag, taggedFiles) -> builder.addTag(taggedFiles));
+                fileGraph = builder.build();
+            }
+            return fileGraph;
+        }
+    }
+
+    // The file with only the projected properties and its backlinks, if it has any and they're projected
+    private PksFile view(int id, PksFile pksFile, Projection projection) {
+        if (projection.includes("backlinks")) {
+            int[] backlinkIds = backlinkIndex.backlinks(id);
+            if (backlinkIds.length > 0) {
+                List<String> backlinks = new ArrayList<>(backlinkIds.length);
+                for (int backlinkId : backlinkIds) {
+                    backlinks.add(pathRegistry.path(backlinkId));
+                }
+                return PksFile.view(pksFile, Map.of("backlinks", backlinks), projection);
+            }
+        }
+        return PksFile.view(pksFile, projection);
+    }
+
+    // -1 when there's none
+    private static long first(RoaringBitmap ids, boolean descending) {
+        if (ids.isEmpty()) {
+            return -1;
+        }
+        return descending ? ids.last() : ids.first();
+    }
+
+    private static long next(RoaringBitmap ids, int after, boolean descending) {
+        if (descending) {
+            return after == 0 ? -1 : ids.previousValue(after - 1);
+        }
+        return ids.nextValue(after + 1);
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.pskenny.repo;
+
+import io.github.pskenny.io.Projection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Serialised responses of the last searches, so a repeated query costs no matching or serialisation. Each entry is
+// for the repository generation it was made from and is ignored once the repository has been updated. Least
+// recently used entries are dropped past the entry or byte limit.
+public class ResultCache {
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    // query is Query.key(), depth is how far links are followed from the matched files
+    public record Key(String query, Projection projection, int depth) {}
+
+    private record Entry(long generation, byte[] json) {}
+
+    public ResultCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    // The cached response for the generation, or null. The generation has to be read before searching, so a response
+    // made while the repository is updated isn't cached as the new one.
+    public synchronized byte[] get(Key key, long generation) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.generation() == generation ? entry.json() : null;
+    }
+
+    public synchronized void put(Key key, long generation, byte[] json) {
+        Entry entry = new Entry(generation, json);
+        Entry existing = entries.get(key);
+        if (existing != null && existing.generation() > entry.generation()) {
+            return;
+        }
+        if (entry.json().length > maxBytes) {
+            return;
+        }
+        if (existing != null) {
+            bytes -= existing.json().length;
+        }
+        entries.put(key, entry);
+        bytes += entry.json().length;
+
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            bytes -= eldest.next().getValue().json().length;
+            eldest.remove();
+        }
+    }
+
+    // Writes a response through to out, keeping a copy to cache unless it gets bigger than the cache would keep
+    public Recorder recorder(OutputStream out) {
+        return new Recorder(out);
+    }
+
+    public class Recorder extends OutputStream {
+        private final OutputStream out;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        private Recorder(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (keep(1)) {
+                copy.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (keep(len)) {
+                copy.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        // what was written, or null if it was too big to keep
+        public byte[] recorded() {
+            return copy == null ? null : copy.toByteArray();
+        }
+
+        private boolean keep(int length) {
+            if (copy != null && copy.size() + length > maxBytes) {
+                copy = null;
+            }
+            return copy != null;
+        }
+    }
+}
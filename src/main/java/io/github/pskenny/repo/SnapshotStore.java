@@ -0,0 +1,329 @@
+package io.github.pskenny.repo;
+
+import io.github.pskenny.io.PksFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+Binary snapshot of a fully updated InMemoryFileRepository so it can be started without parsing every file again.
+
+Layout (version 1):
+  magic, version, directory
+  file count, then per file: path, size, modification time, flags, properties
+  wikilink count, then per wikilink: text, file path count, file paths
+
+Property values are written with a one byte type tag. Strings up to MAX_INTERNED_LENGTH are written once and
+referenced by index after that, property names, tags and links repeat a lot. Numbers are written as varints.
+ */
+public class SnapshotStore {
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+
+    // Never read as part of the directory
+    public static final String DIRECTORY = ".pkspkms";
+    public static final String DEFAULT_LOCATION = DIRECTORY + "/snapshot.bin";
+    static final int MAGIC = 0x504B5353; // PKSS
+    static final int VERSION = 1;
+
+    // File flags
+    static final byte HAS_BASES = 1;
+    static final byte HAS_WIKILINKS = 1 << 1;
+
+    private static final int MAX_INTERNED_LENGTH = 256;
+
+    // Value type tags
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte STRING_REFERENCE = 2;
+    private static final byte INTEGER = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte BOOLEAN = 6;
+    private static final byte LIST = 7;
+    private static final byte MAP = 8;
+    private static final byte DATE = 9;
+    private static final byte BIG_INTEGER = 10;
+    private static final byte SET = 11;
+
+    public record Entry(PksFile pksFile, FileStamp stamp, byte flags) {}
+
+    public record Snapshot(List<Entry> entries, Map<String, Set<String>> wikilinks) {}
+
+    // The snapshot location when no path is given
+    public static Path defaultPath(String directory) {
+        return Paths.get(directory, DEFAULT_LOCATION);
+    }
+
+    public static Path resolvePath(String directory, String snapshot) {
+        return snapshot == null || snapshot.isEmpty() ? defaultPath(directory) : Paths.get(snapshot);
+    }
+
+    public static void write(Path path, String directory, Snapshot snapshot) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (var out = new SnapshotOutput(new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16)))) {
+            out.data.writeInt(MAGIC);
+            out.data.writeInt(VERSION);
+            out.writeString(canonicalDirectory(directory));
+
+            out.writeVarLong(snapshot.entries().size());
+            for (Entry entry : snapshot.entries()) {
+                out.writeString(entry.pksFile().getFilePath());
+                out.writeVarLong(entry.stamp().size());
+                out.data.writeLong(entry.stamp().modified());
+                out.data.writeByte(entry.flags());
+                out.writeValue(entry.pksFile().getProperties());
+            }
+
+            out.writeVarLong(snapshot.wikilinks().size());
+            for (var wikilink : snapshot.wikilinks().entrySet()) {
+                out.writeString(wikilink.getKey());
+                out.writeVarLong(wikilink.getValue().size());
+                for (String filePath : wikilink.getValue()) {
+                    out.writeString(filePath);
+                }
+            }
+        }
+
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Returns null if there's no usable snapshot at the path
+    public static Snapshot read(Path path, String directory) {
+        if (!Files.isRegularFile(path)) {
+            logger.info("No snapshot at {}", path);
+            return null;
+        }
+
+        try (var in = new SnapshotInput(new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16)))) {
+            if (in.data.readInt() != MAGIC) {
+                logger.warn("Not a snapshot file: {}", path);
+                return null;
+            }
+            int version = in.data.readInt();
+            if (version != VERSION) {
+                logger.info("Ignoring snapshot {} with version {}, expected {}", path, version, VERSION);
+                return null;
+            }
+            String snapshotDirectory = in.readString();
+            if (!snapshotDirectory.equals(canonicalDirectory(directory))) {
+                logger.warn("Ignoring snapshot {}, it was made for {}", path, snapshotDirectory);
+                return null;
+            }
+
+            int fileCount = (int) in.readVarLong();
+            List<Entry> entries = new ArrayList<>(fileCount);
+            for (int i = 0; i < fileCount; i++) {
+                String filePath = in.readString();
+                FileStamp stamp = new FileStamp(in.readVarLong(), in.data.readLong());
+                byte flags = in.data.readByte();
+                Map<String, Object> properties = (Map<String, Object>) in.readValue();
+                File file = Paths.get(directory, filePath).toFile();
+                entries.add(new Entry(new PksFile(filePath, file, properties), stamp, flags));
+            }
+
+            int wikilinkCount = (int) in.readVarLong();
+            Map<String, Set<String>> wikilinks = new HashMap<>(wikilinkCount * 2);
+            for (int i = 0; i < wikilinkCount; i++) {
+                String text = in.readString();
+                int pathCount = (int) in.readVarLong();
+                String[] filePaths = new String[pathCount];
+                for (int j = 0; j < pathCount; j++) {
+                    filePaths[j] = in.readString();
+                }
+                wikilinks.put(text, Set.of(filePaths));
+            }
+
+            return new Snapshot(entries, wikilinks);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Couldn't read snapshot {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    private static String canonicalDirectory(String directory) throws IOException {
+        return new File(directory).getCanonicalPath();
+    }
+
+    private static class SnapshotOutput implements Closeable {
+        private final DataOutputStream data;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        SnapshotOutput(DataOutputStream data) {
+            this.data = data;
+        }
+
+        void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                data.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            data.writeByte((int) value);
+        }
+
+        void writeString(String value) throws IOException {
+            Integer index = strings.get(value);
+            if (index != null) {
+                data.writeByte(STRING_REFERENCE);
+                writeVarLong(index);
+                return;
+            }
+            if (value.length() <= MAX_INTERNED_LENGTH) {
+                strings.put(value, strings.size());
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            data.writeByte(STRING);
+            writeVarLong(bytes.length);
+            data.write(bytes);
+        }
+
+        void writeValue(Object value) throws IOException {
+            if (value == null) {
+                data.writeByte(NULL);
+            } else if (value instanceof String string) {
+                writeString(string);
+            } else if (value instanceof Integer integer) {
+                data.writeByte(INTEGER);
+                writeVarLong(zigZag(integer));
+            } else if (value instanceof Long longValue) {
+                data.writeByte(LONG);
+                writeVarLong(zigZag(longValue));
+            } else if (value instanceof Double doubleValue) {
+                data.writeByte(DOUBLE);
+                data.writeDouble(doubleValue);
+            } else if (value instanceof Boolean booleanValue) {
+                data.writeByte(BOOLEAN);
+                data.writeBoolean(booleanValue);
+            } else if (value instanceof Date date) {
+                data.writeByte(DATE);
+                data.writeLong(date.getTime());
+            } else if (value instanceof BigInteger bigInteger) {
+                data.writeByte(BIG_INTEGER);
+                writeString(bigInteger.toString());
+            } else if (value instanceof Map<?, ?> map) {
+                data.writeByte(MAP);
+                writeVarLong(map.size());
+                for (var entry : map.entrySet()) {
+                    writeValue(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            } else if (value instanceof Collection<?> collection) {
+                data.writeByte(value instanceof Set ? SET : LIST);
+                writeVarLong(collection.size());
+                for (Object element : collection) {
+                    writeValue(element);
+                }
+            } else if (value instanceof Object[] array) {
+                writeValue(Arrays.asList(array));
+            } else {
+                logger.debug("Writing unsupported snapshot value type {} as text", value.getClass());
+                writeString(value.toString());
+            }
+        }
+
+        private static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+        }
+    }
+
+    private static class SnapshotInput implements Closeable {
+        private final DataInputStream data;
+        private final List<String> strings = new ArrayList<>();
+
+        SnapshotInput(DataInputStream data) {
+            this.data = data;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data.readByte();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        String readString() throws IOException {
+            return (String) readValue(data.readByte());
+        }
+
+        Object readValue() throws IOException {
+            return readValue(data.readByte());
+        }
+
+        private Object readValue(byte type) throws IOException {
+            switch (type) {
+                case NULL:
+                    return null;
+                case STRING:
+                    byte[] bytes = new byte[(int) readVarLong()];
+                    data.readFully(bytes);
+                    String string = new String(bytes, StandardCharsets.UTF_8);
+                    if (string.length() <= MAX_INTERNED_LENGTH) {
+                        strings.add(string);
+                    }
+                    return string;
+                case STRING_REFERENCE:
+                    return strings.get((int) readVarLong());
+                case INTEGER:
+                    return (int) unZigZag(readVarLong());
+                case LONG:
+                    return unZigZag(readVarLong());
+                case DOUBLE:
+                    return data.readDouble();
+                case BOOLEAN:
+                    return data.readBoolean();
+                case DATE:
+                    return new Date(data.readLong());
+                case BIG_INTEGER:
+                    return new BigInteger(readString());
+                case MAP:
+                    int mapSize = (int) readVarLong();
+                    Map<Object, Object> map = new LinkedHashMap<>(mapSize * 2);
+                    for (int i = 0; i < mapSize; i++) {
+                        map.put(readValue(), readValue());
+                    }
+                    return map;
+                case LIST:
+                case SET:
+                    int size = (int) readVarLong();
+                    Collection<Object> collection = type == SET ? new LinkedHashSet<>(size * 2) : new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        collection.add(readValue());
+                    }
+                    return collection;
+                default:
+                    throw new IOException("Unknown snapshot value type: " + type);
+            }
+        }
+
+        private static long unZigZag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+        }
+    }
+}
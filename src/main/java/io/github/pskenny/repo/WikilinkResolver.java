@@ -1,6 +1,7 @@
 package io.github.pskenny.repo;
 
 import io.github.pskenny.io.PksFile;
+import io.github.pskenny.repo.index.PathRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,6 +11,8 @@ import java.util.*;
 public class WikilinkResolver {
     private static final Logger logger = LoggerFactory.getLogger(WikilinkResolver.class);
     private Map<String, Set<String>> resolvedLinks = new HashMap<>();
+    // wikilinks without the .md of a file name (or alias) ending with it
+    private Map<String, Set<String>> resolvedStems = new HashMap<>();
 
     public void initialise(Map<String, PksFile> initialPksFiles) {
         HashMap<String, Set<String>> fileMap = new HashMap<>();
@@ -46,15 +49,39 @@ public class WikilinkResolver {
                 }
         );
         resolvedLinks = fileMap;
+        resolvedStems = stems(fileMap);
+    }
+
+    // restore a state previously got from getResolvedLinks()
+    public void restore(Map<String, Set<String>> resolvedLinks) {
+        this.resolvedLinks = new HashMap<>(resolvedLinks);
+        this.resolvedStems = stems(resolvedLinks);
+    }
+
+    private static Map<String, Set<String>> stems(Map<String, Set<String>> resolvedLinks) {
+        Map<String, Set<String>> stems = new HashMap<>();
+        resolvedLinks.forEach((name, filePaths) -> {
+            if (name.endsWith(".md")) {
+                stems.put(name.substring(0, name.length() - ".md".length()), filePaths);
+            }
+        });
+        return stems;
+    }
+
+    public Map<String, Set<String>> getResolvedLinks() {
+        return Collections.unmodifiableMap(resolvedLinks);
     }
 
     public String resolveWikilink(String text) {
-        text = text.startsWith("/") ? text.substring(1) : text;
+        text = PathRegistry.canonical(text);
+        if (text == null) {
+            return null;
+        }
         Set<String> potentialLinks = resolvedLinks.get(text);
         // check plain
         if (potentialLinks == null) {
             // check if it's the file name without the file extension
-            potentialLinks = resolvedLinks.get(text + ".md");
+            potentialLinks = resolvedStems.get(text);
             if (potentialLinks == null) {
                 return null;
             }
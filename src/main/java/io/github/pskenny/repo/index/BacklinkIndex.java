@@ -0,0 +1,121 @@
+package io.github.pskenny.repo.index;
+
+import java.util.Arrays;
+
+/*
+The links between files by id, both ways, so a file's backlinks are looked up instead of worked out from every file's
+links on each search. Each id has a sorted int array of the ids it links to and one of the ids linking to it. Setting a
+file's links only changes the backlinks of the files added to or dropped from them.
+
+Links are to paths which don't have to be files (yet), a file created later has the backlinks of every file already
+linking to its path.
+
+The arrays are never changed once they're in the index, a change puts in new ones, so a snapshot shares all of them
+and the chunks of ids that haven't changed since.
+ */
+public class BacklinkIndex {
+    private static final int[] NONE = new int[0];
+
+    private final ChunkedArray<int[]> links;
+    private final ChunkedArray<int[]> backlinks;
+
+    public BacklinkIndex() {
+        this(new ChunkedArray<>(), new ChunkedArray<>());
+    }
+
+    private BacklinkIndex(ChunkedArray<int[]> links, ChunkedArray<int[]> backlinks) {
+        this.links = links;
+        this.backlinks = backlinks;
+    }
+
+    // The links as they are now, changes to this index after aren't seen by it and it can't be changed
+    public BacklinkIndex snapshot() {
+        return new BacklinkIndex(links.snapshot(), backlinks.snapshot());
+    }
+
+    // targets don't have to be sorted or unique
+    public void setLinks(int source, int[] targets) {
+        int[] newLinks = sortedUnique(targets);
+        int[] oldLinks = links(source);
+        if (Arrays.equals(oldLinks, newLinks)) {
+            return;
+        }
+
+        int oldIndex = 0;
+        int newIndex = 0;
+        while (oldIndex < oldLinks.length || newIndex < newLinks.length) {
+            if (newIndex == newLinks.length
+                    || (oldIndex < oldLinks.length && oldLinks[oldIndex] < newLinks[newIndex])) {
+                removeBacklink(oldLinks[oldIndex++], source);
+            } else if (oldIndex == oldLinks.length || newLinks[newIndex] < oldLinks[oldIndex]) {
+                addBacklink(newLinks[newIndex++], source);
+            } else {
+                oldIndex++;
+                newIndex++;
+            }
+        }
+        links.set(source, newLinks.length == 0 ? null : newLinks);
+    }
+
+    // a file that's gone doesn't link to anything, files linking to it keep their links
+    public void remove(int source) {
+        setLinks(source, NONE);
+    }
+
+    // sorted ids of the files linking to the target, don't change it
+    public int[] backlinks(int target) {
+        int[] sources = backlinks.get(target);
+        return sources == null ? NONE : sources;
+    }
+
+    // sorted ids the source links to, don't change it
+    public int[] links(int source) {
+        int[] targets = links.get(source);
+        return targets == null ? NONE : targets;
+    }
+
+    private void addBacklink(int target, int source) {
+        int[] sources = backlinks(target);
+        int index = Arrays.binarySearch(sources, source);
+        if (index >= 0) {
+            return;
+        }
+        int insertAt = -index - 1;
+        int[] added = new int[sources.length + 1];
+        System.arraycopy(sources, 0, added, 0, insertAt);
+        added[insertAt] = source;
+        System.arraycopy(sources, insertAt, added, insertAt + 1, sources.length - insertAt);
+        backlinks.set(target, added);
+    }
+
+    private void removeBacklink(int target, int source) {
+        int[] sources = backlinks(target);
+        int index = Arrays.binarySearch(sources, source);
+        if (index < 0) {
+            return;
+        }
+        if (sources.length == 1) {
+            backlinks.set(target, null);
+            return;
+        }
+        int[] removed = new int[sources.length - 1];
+        System.arraycopy(sources, 0, removed, 0, index);
+        System.arraycopy(sources, index + 1, removed, index, sources.length - index - 1);
+        backlinks.set(target, removed);
+    }
+
+    private static int[] sortedUnique(int[] ids) {
+        if (ids.length == 0) {
+            return NONE;
+        }
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int unique = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] != sorted[unique - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.pskenny.repo.index;
+
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/*
+An array by id, growing as it's set, kept in chunks so it can be copied on write. snapshot() gives a frozen copy
+sharing every chunk with this one, after that this copies a chunk the first time it's changed. An update setting a few
+ids copies a few chunks and the chunk table, the rest is shared by every snapshot that hasn't seen them change.
+ */
+public class ChunkedArray<T> {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final boolean frozen;
+    private Object[][] chunks;
+    // chunks (and the table) this copy made and can change in place, the others are shared with a snapshot
+    private boolean[] ownedChunks;
+    private boolean ownedTable;
+
+    public ChunkedArray() {
+        this(new Object[0][], false);
+    }
+
+    private ChunkedArray(Object[][] chunks, boolean frozen) {
+        this.chunks = chunks;
+        this.frozen = frozen;
+        this.ownedChunks = new boolean[chunks.length];
+        this.ownedTable = !frozen;
+    }
+
+    // null if it was never set
+    @SuppressWarnings("unchecked")
+    public T get(int id) {
+        int chunk = id >>> CHUNK_BITS;
+        if (chunk >= chunks.length || chunks[chunk] == null) {
+            return null;
+        }
+        return (T) chunks[chunk][id & (CHUNK_SIZE - 1)];
+    }
+
+    public void set(int id, T value) {
+        if (frozen) {
+            throw new IllegalStateException("Snapshots can't be changed");
+        }
+        int chunk = id >>> CHUNK_BITS;
+        if (!ownedTable || chunk >= chunks.length) {
+            int length = Math.max(chunk + 1, chunk >= chunks.length ? chunks.length * 2 : chunks.length);
+            chunks = Arrays.copyOf(chunks, length);
+            ownedChunks = Arrays.copyOf(ownedChunks, length);
+            ownedTable = true;
+        }
+        if (chunks[chunk] == null) {
+            if (value == null) {
+                return;
+            }
+            chunks[chunk] = new Object[CHUNK_SIZE];
+            ownedChunks[chunk] = true;
+        } else if (!ownedChunks[chunk]) {
+            chunks[chunk] = chunks[chunk].clone();
+            ownedChunks[chunk] = true;
+        }
+        chunks[chunk][id & (CHUNK_SIZE - 1)] = value;
+    }
+
+    // Every id set to something, in order
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjIntConsumer<T> action) {
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            Object[] values = chunks[chunk];
+            if (values == null) {
+                continue;
+            }
+            for (int i = 0; i < CHUNK_SIZE; i++) {
+                if (values[i] != null) {
+                    action.accept((T) values[i], (chunk << CHUNK_BITS) | i);
+                }
+            }
+        }
+    }
+
+    // A copy that's never changed, this one carries on copying what it changes from then on
+    public ChunkedArray<T> snapshot() {
+        if (frozen) {
+            return this;
+        }
+        ownedTable = false;
+        Arrays.fill(ownedChunks, false);
+        return new ChunkedArray<>(chunks, true);
+    }
+}
@@ -0,0 +1,202 @@
+package io.github.pskenny.repo.index;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.*;
+
+/*
+Files and tags as a graph in compressed sparse row form: node i's neighbours are edges[offsets[i]] up to
+edges[offsets[i + 1]]. Files are nodes by their PathRegistry id, tags come after the last path id. A file's neighbours
+are the files it links to or is linked from, then its tags. A tag's neighbours are the files with it.
+
+It's built once for a generation of the repository and not changed after, neighbourhoods are walked over plain int
+arrays.
+ */
+public class FileGraph {
+    private final int paths;
+    private final int[] offsets;
+    private final int[] edges;
+
+    // files in the order they were reached, truncated if there were more than the limit
+    public record Neighbourhood(int[] files, boolean truncated) {}
+
+    private FileGraph(int paths, int[] offsets, int[] edges) {
+        this.paths = paths;
+        this.offsets = offsets;
+        this.edges = edges;
+    }
+
+    /*
+    The start files, the files up to depth - 1 links from them (either way) and, past depth 1, every file sharing a
+    tag with any of those. A depth of 2 is the matched files, the files they link to and from, and the files tagged
+    like them. Nearer files are reached first, at most maxNodes files are returned.
+     */
+    public Neighbourhood neighbourhood(RoaringBitmap start, int depth, int maxNodes) {
+        Reached reached = new Reached(maxNodes);
+        int[] frontier = start.toArray();
+        for (int file : frontier) {
+            if (!reached.add(file)) {
+                return reached.result(true);
+            }
+        }
+
+        for (int hop = 1; hop < depth && frontier.length > 0; hop++) {
+            int[] next = new int[16];
+            int nextSize = 0;
+            for (int file : frontier) {
+                for (int edge = offsets[file]; edge < offsets[file + 1] && edges[edge] < paths; edge++) {
+                    int linked = edges[edge];
+                    if (!reached.contains(linked)) {
+                        if (!reached.add(linked)) {
+                            return reached.result(true);
+                        }
+                        if (nextSize == next.length) {
+                            next = Arrays.copyOf(next, nextSize * 2);
+                        }
+                        next[nextSize++] = linked;
+                    }
+                }
+            }
+            frontier = Arrays.copyOf(next, nextSize);
+        }
+
+        if (depth > 1) {
+            BitSet seenTags = new BitSet();
+            int linkedFiles = reached.size;
+            for (int i = 0; i < linkedFiles; i++) {
+                int file = reached.order[i];
+                for (int edge = offsets[file + 1] - 1; edge >= offsets[file] && edges[edge] >= paths; edge--) {
+                    int tag = edges[edge];
+                    if (seenTags.get(tag - paths)) {
+                        continue;
+                    }
+                    seenTags.set(tag - paths);
+                    for (int tagged = offsets[tag]; tagged < offsets[tag + 1]; tagged++) {
+                        if (!reached.contains(edges[tagged]) && !reached.add(edges[tagged])) {
+                            return reached.result(true);
+                        }
+                    }
+                }
+            }
+        }
+        return reached.result(false);
+    }
+
+    private class Reached {
+        private final int maxNodes;
+        private final BitSet seen = new BitSet(paths);
+        private int[] order = new int[16];
+        private int size = 0;
+
+        Reached(int maxNodes) {
+            this.maxNodes = maxNodes;
+        }
+
+        boolean contains(int file) {
+            return seen.get(file);
+        }
+
+        // false if it couldn't be added because there's already maxNodes files
+        boolean add(int file) {
+            if (size == maxNodes) {
+                return false;
+            }
+            seen.set(file);
+            if (size == order.length) {
+                order = Arrays.copyOf(order, size * 2);
+            }
+            order[size++] = file;
+            return true;
+        }
+
+        Neighbourhood result(boolean truncated) {
+            return new Neighbourhood(Arrays.copyOf(order, size), truncated);
+        }
+    }
+
+    // Files are added with the files they're linked with and tags with their files. Links to paths that aren't files
+    // are left out when it's built.
+    public static class Builder {
+        private final int paths;
+        private final boolean[] files;
+        private final int[][] linked;
+        private final List<int[]> taggedFiles = new ArrayList<>();
+
+        // paths is the number of ids PathRegistry has given out
+        public Builder(int paths) {
+            this.paths = paths;
+            this.files = new boolean[paths];
+            this.linked = new int[paths][];
+        }
+
+        // linked are the ids the file links to or is linked from, in any order
+        public Builder addFile(int id, int[] linkedIds) {
+            files[id] = true;
+            linked[id] = linkedIds;
+            return this;
+        }
+
+        public Builder addTag(RoaringBitmap tagged) {
+            taggedFiles.add(tagged.toArray());
+            return this;
+        }
+
+        public FileGraph build() {
+            int nodes = paths + taggedFiles.size();
+            int[] fileTagCounts = new int[paths];
+            for (int[] tagged : taggedFiles) {
+                for (int id : tagged) {
+                    fileTagCounts[id]++;
+                }
+            }
+
+            int[] offsets = new int[nodes + 1];
+            int edgeCount = 0;
+            for (int id = 0; id < paths; id++) {
+                offsets[id] = edgeCount;
+                if (files[id]) {
+                    for (int linkedId : linked[id]) {
+                        if (isLink(id, linkedId)) {
+                            edgeCount++;
+                        }
+                    }
+                    edgeCount += fileTagCounts[id];
+                }
+            }
+            for (int tag = 0; tag < taggedFiles.size(); tag++) {
+                offsets[paths + tag] = edgeCount;
+                edgeCount += taggedFiles.get(tag).length;
+            }
+            offsets[nodes] = edgeCount;
+
+            // file neighbours are files then tags, the walk relies on that order
+            int[] edges = new int[edgeCount];
+            int[] fileTagEnds = new int[paths];
+            for (int id = 0; id < paths; id++) {
+                if (files[id]) {
+                    int edge = offsets[id];
+                    for (int linkedId : linked[id]) {
+                        if (isLink(id, linkedId)) {
+                            edges[edge++] = linkedId;
+                        }
+                    }
+                    fileTagEnds[id] = edge;
+                }
+            }
+            for (int tag = 0; tag < taggedFiles.size(); tag++) {
+                int[] tagged = taggedFiles.get(tag);
+                System.arraycopy(tagged, 0, edges, offsets[paths + tag], tagged.length);
+                for (int id : tagged) {
+                    if (files[id]) {
+                        edges[fileTagEnds[id]++] = paths + tag;
+                    }
+                }
+            }
+            return new FileGraph(paths, offsets, edges);
+        }
+
+        private boolean isLink(int id, int linkedId) {
+            return linkedId < paths && files[linkedId] && linkedId != id;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.pskenny.repo.index;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Gives every file path an int id so sets of files can be kept as bitmaps. Ids are handed out in the order paths
+// are registered and never reused, a file that's removed and comes back gets its old id.
+//
+// Paths are registered by one thread at a time and can be looked up from any. An id's path never changes, so
+// snapshots share the registry, they just never see ids given out after them.
+public class PathRegistry {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // grown into a new array, older ones still have every path they had
+    private volatile String[] paths = new String[16];
+    private volatile int size = 0;
+
+    // Registers the paths without an id in sorted order, so files next to each other get ids close together
+    public void registerAll(Collection<String> filePaths) {
+        filePaths.stream()
+                .filter(filePath -> !ids.containsKey(filePath))
+                .sorted()
+                .forEach(this::register);
+    }
+
+    public int register(String filePath) {
+        Integer id = ids.get(filePath);
+        if (id == null) {
+            id = size;
+            String[] registered = id < paths.length ? paths : Arrays.copyOf(paths, id * 2);
+            registered[id] = filePath;
+            paths = registered;
+            size = id + 1;
+            ids.put(filePath, id);
+        }
+        return id;
+    }
+
+    // -1 if the path was never registered
+    public int id(String filePath) {
+        return ids.getOrDefault(filePath, -1);
+    }
+
+    public String path(int id) {
+        if (id >= size) {
+            throw new IndexOutOfBoundsException(id);
+        }
+        return paths[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /*
+    The path the way the repository keys files: separated by /, without a leading slash and with . and .. segments
+    resolved, so a link written either way gets one id. null if it goes above the directory. Paths already like that
+    are returned as they are.
+     */
+    public static String canonical(String path) {
+        if (isCanonical(path)) {
+            return path;
+        }
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                if (segments.isEmpty()) {
+                    return null;
+                }
+                segments.removeLast();
+            } else {
+                segments.addLast(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    private static boolean isCanonical(String path) {
+        if (path.isEmpty() || path.charAt(0) == '/' || path.charAt(path.length() - 1) == '/') {
+            return path.isEmpty();
+        }
+        int segmentStart = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == '/') {
+                int length = i - segmentStart;
+                if (length == 0
+                        || (length == 1 && path.charAt(segmentStart) == '.')
+                        || (length == 2 && path.startsWith("..", segmentStart))) {
+                    return false;
+                }
+                segmentStart = i + 1;
+            }
+        }
+        return true;
+    }
+}
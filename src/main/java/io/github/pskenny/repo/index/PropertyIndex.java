@@ -0,0 +1,392 @@
+package io.github.pskenny.repo.index;
+
+import io.github.pskenny.io.Query;
+import io.github.pskenny.io.TypedValue;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.*;
+
+/*
+Inverted index of file properties answering Search queries with bitmaps of file ids instead of checking every file.
+
+For each property it keeps the files which have it, the files with each string value (a string, or a string in a
+list) and the files with true and false. The string values are kept sorted, and sorted again written backwards, so
+value* and *value are answered by reading the range of values starting (or ending) with value. Numbers and dates,
+and strings of them, are parsed once when a file is added and kept in sorted arrays for > and < and equality. The
+string values of tags are read as the TagIndex.
+
+Inclusions are intersected and exclusions are taken away, in the same order Search checks them.
+
+snapshot() gives a copy that's never changed, for searching while this one is changed. Nothing is copied for it, this
+index copies a property's postings the first time it changes them after a snapshot and a value's bitmap the first time
+it changes that, everything else stays shared.
+ */
+public class PropertyIndex {
+    // longer values (like content) aren't kept backwards, suffix queries check each of them instead
+    private static final int MAX_REVERSED_LENGTH = 256;
+
+    private final PathRegistry pathRegistry;
+    private final boolean frozen;
+    private RoaringBitmap files;
+    private Map<String, Postings> postings;
+    // what each file was added with, to take it out again after its properties have changed
+    private final ChunkedArray<Map<String, Indexed>> indexedValues;
+    // what this index made since the last snapshot and can change in place, the rest is shared with snapshots
+    private boolean filesOwned;
+    private boolean postingsMapOwned;
+    private final Set<Postings> ownedPostings = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // The string values of a property and the numbers and dates in it
+    private record Indexed(String[] terms, Typed[] typed) {}
+
+    private record Typed(TypedValue value, boolean fromText) {}
+
+    private record Sorted(SortedValues numbers, SortedValues dates) {}
+
+    private static class Postings {
+        private final RoaringBitmap files;
+        private final TreeMap<String, RoaringBitmap> terms;
+        private final TreeMap<String, RoaringBitmap> reversedTerms;
+        private final Set<String> longTerms;
+        private final RoaringBitmap trueFiles;
+        private final RoaringBitmap falseFiles;
+        // files with numbers or dates, sorted into arrays when they're next searched after a change
+        private final RoaringBitmap typedFiles;
+        // set by whichever search sorts them first, snapshots share it until the postings are copied
+        private volatile Sorted sorted;
+        // value bitmaps made by these postings, the others are shared and copied before they're changed
+        private final Set<RoaringBitmap> ownedTerms = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Postings() {
+            files = new RoaringBitmap();
+            terms = new TreeMap<>();
+            reversedTerms = new TreeMap<>();
+            longTerms = new HashSet<>();
+            trueFiles = new RoaringBitmap();
+            falseFiles = new RoaringBitmap();
+            typedFiles = new RoaringBitmap();
+        }
+
+        // shares the value bitmaps with the source
+        Postings(Postings source) {
+            files = source.files.clone();
+            terms = new TreeMap<>(source.terms);
+            reversedTerms = new TreeMap<>(source.reversedTerms);
+            longTerms = new HashSet<>(source.longTerms);
+            trueFiles = source.trueFiles.clone();
+            falseFiles = source.falseFiles.clone();
+            typedFiles = source.typedFiles.clone();
+            sorted = source.sorted;
+        }
+
+        // The files with the value, copied first if they're shared
+        RoaringBitmap ownedTermFiles(String term) {
+            RoaringBitmap termFiles = terms.get(term);
+            if (termFiles != null && ownedTerms.contains(termFiles)) {
+                return termFiles;
+            }
+            if (termFiles == null) {
+                termFiles = new RoaringBitmap();
+                if (term.length() > MAX_REVERSED_LENGTH) {
+                    longTerms.add(term);
+                }
+            } else {
+                termFiles = termFiles.clone();
+            }
+            terms.put(term, termFiles);
+            if (term.length() <= MAX_REVERSED_LENGTH) {
+                reversedTerms.put(reverse(term), termFiles);
+            }
+            ownedTerms.add(termFiles);
+            return termFiles;
+        }
+    }
+
+    public PropertyIndex(PathRegistry pathRegistry) {
+        this(pathRegistry, new RoaringBitmap(), new HashMap<>(), new ChunkedArray<>(), false);
+        filesOwned = true;
+        postingsMapOwned = true;
+    }
+
+    private PropertyIndex(PathRegistry pathRegistry, RoaringBitmap files, Map<String, Postings> postings,
+                          ChunkedArray<Map<String, Indexed>> indexedValues, boolean frozen) {
+        this.pathRegistry = pathRegistry;
+        this.files = files;
+        this.postings = postings;
+        this.indexedValues = indexedValues;
+        this.frozen = frozen;
+    }
+
+    // The index as it is now, changes to this index after aren't seen by it and it can't be changed
+    public PropertyIndex snapshot() {
+        if (frozen) {
+            return this;
+        }
+        filesOwned = false;
+        postingsMapOwned = false;
+        ownedPostings.clear();
+        return new PropertyIndex(pathRegistry, files, postings, indexedValues.snapshot(), true);
+    }
+
+    // Adds the file, or replaces what it was added with before
+    public void add(String filePath, Map<String, Object> properties) {
+        remove(filePath);
+        int id = pathRegistry.register(filePath);
+        ownedFiles().add(id);
+
+        Map<String, Indexed> fileValues = new HashMap<>(properties.size() * 2);
+        // frontmatter keys can be numbers or dates, like 2024: done. Searches look properties up by name, they never
+        // match one of those so it isn't indexed.
+        ((Map<?, ?>) properties).forEach((propertyKey, value) -> {
+            if (!(propertyKey instanceof String key)) {
+                return;
+            }
+            Postings keyPostings = ownedPostings(key);
+            keyPostings.files.add(id);
+
+            Indexed indexed = indexed(value);
+            for (String term : indexed.terms()) {
+                keyPostings.ownedTermFiles(term).add(id);
+            }
+            if (indexed.typed().length > 0) {
+                keyPostings.typedFiles.add(id);
+                unsort(keyPostings);
+            }
+            fileValues.put(key, indexed);
+
+            if (value instanceof Boolean booleanValue) {
+                (booleanValue ? keyPostings.trueFiles : keyPostings.falseFiles).add(id);
+            }
+        });
+        indexedValues.set(id, fileValues);
+    }
+
+    public void remove(String filePath) {
+        checkNotFrozen();
+        int id = pathRegistry.id(filePath);
+        Map<String, Indexed> fileValues = id < 0 ? null : indexedValues.get(id);
+        if (fileValues == null) {
+            return;
+        }
+        indexedValues.set(id, null);
+        ownedFiles().remove(id);
+
+        fileValues.forEach((key, indexed) -> {
+            Postings keyPostings = ownedPostings(key);
+            keyPostings.files.remove(id);
+            keyPostings.trueFiles.remove(id);
+            keyPostings.falseFiles.remove(id);
+            if (keyPostings.typedFiles.checkedRemove(id)) {
+                unsort(keyPostings);
+            }
+            for (String term : indexed.terms()) {
+                if (!keyPostings.terms.containsKey(term)) {
+                    continue;
+                }
+                RoaringBitmap termFiles = keyPostings.ownedTermFiles(term);
+                termFiles.remove(id);
+                if (termFiles.isEmpty()) {
+                    keyPostings.terms.remove(term);
+                    keyPostings.ownedTerms.remove(termFiles);
+                    if (term.length() <= MAX_REVERSED_LENGTH) {
+                        keyPostings.reversedTerms.remove(reverse(term));
+                    } else {
+                        keyPostings.longTerms.remove(term);
+                    }
+                }
+            }
+            if (keyPostings.files.isEmpty()) {
+                postings.remove(key);
+            }
+        });
+    }
+
+    // number of files added
+    public int size() {
+        return files.getCardinality();
+    }
+
+    public TagIndex tags() {
+        Postings tagPostings = postings.get(TagIndex.PROPERTY);
+        return new TagIndex(tagPostings == null ? new TreeMap<>() : tagPostings.terms);
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Snapshots can't be changed");
+        }
+    }
+
+    private RoaringBitmap ownedFiles() {
+        if (!filesOwned) {
+            files = files.clone();
+            filesOwned = true;
+        }
+        return files;
+    }
+
+    // The property's postings, made or copied first if they're shared
+    private Postings ownedPostings(String key) {
+        if (!postingsMapOwned) {
+            postings = new HashMap<>(postings);
+            postingsMapOwned = true;
+        }
+        Postings keyPostings = postings.get(key);
+        if (keyPostings == null || !ownedPostings.contains(keyPostings)) {
+            keyPostings = keyPostings == null ? new Postings() : new Postings(keyPostings);
+            postings.put(key, keyPostings);
+            ownedPostings.add(keyPostings);
+        }
+        return keyPostings;
+    }
+
+    // Ids of the files matching the query, the same files Query.matches would
+    public RoaringBitmap search(Query query) {
+        RoaringBitmap result = files.clone();
+
+        for (Query.Clause inclusion : query.inclusions()) {
+            result = matching(inclusion, result);
+            if (result.isEmpty()) {
+                return result;
+            }
+        }
+        for (Query.Clause exclusion : query.exclusions()) {
+            result.andNot(matching(exclusion, result));
+            if (result.isEmpty()) {
+                return result;
+            }
+        }
+
+        return result;
+    }
+
+    // The candidates whose property matches the clause
+    private RoaringBitmap matching(Query.Clause clause, RoaringBitmap candidates) {
+        Postings keyPostings = postings.get(clause.key());
+        if (keyPostings == null) {
+            return new RoaringBitmap();
+        }
+        RoaringBitmap matched;
+        switch (clause.operator()) {
+            case HAS:
+                return RoaringBitmap.and(keyPostings.files, candidates);
+            case PREFIX:
+                matched = startingWith(keyPostings, clause.value());
+                break;
+            case SUFFIX:
+                matched = endingWith(keyPostings, clause.value());
+                break;
+            case GREATER:
+            case LESS:
+                matched = inRange(clause, keyPostings);
+                break;
+            default:
+                RoaringBitmap termFiles = keyPostings.terms.get(clause.value());
+                matched = termFiles == null ? new RoaringBitmap() : termFiles.clone();
+                TypedValue typedValue = clause.typedValue();
+                if (typedValue != null) {
+                    matched.or(sorted(clause.key(), keyPostings, typedValue.date()).equalTo(typedValue.value()));
+                }
+        }
+        // booleans are compared to the parsed value whatever the operator
+        matched.or(clause.booleanValue() ? keyPostings.trueFiles : keyPostings.falseFiles);
+        matched.and(candidates);
+        return matched;
+    }
+
+    private RoaringBitmap inRange(Query.Clause clause, Postings keyPostings) {
+        TypedValue bound = clause.typedValue();
+        if (bound == null) {
+            return new RoaringBitmap();
+        }
+        SortedValues values = sorted(clause.key(), keyPostings, bound.date());
+        return clause.operator() == Query.Operator.GREATER
+                ? values.greaterThan(bound.value())
+                : values.lessThan(bound.value());
+    }
+
+    // Postings shared with a snapshot are only sorted from values they share, whichever index sorts them first
+    private SortedValues sorted(String key, Postings keyPostings, boolean dates) {
+        Sorted sorted = keyPostings.sorted;
+        if (sorted == null) {
+            List<SortedValues.Value> numbers = new ArrayList<>();
+            List<SortedValues.Value> dateValues = new ArrayList<>();
+            keyPostings.typedFiles.forEach((int id) -> {
+                for (Typed typed : indexedValues.get(id).get(key).typed()) {
+                    var sortedValue = new SortedValues.Value(id, typed.value().value(), typed.fromText());
+                    (typed.value().date() ? dateValues : numbers).add(sortedValue);
+                }
+            });
+            sorted = new Sorted(new SortedValues(numbers), new SortedValues(dateValues));
+            keyPostings.sorted = sorted;
+        }
+        return dates ? sorted.dates() : sorted.numbers();
+    }
+
+    private static void unsort(Postings keyPostings) {
+        keyPostings.sorted = null;
+    }
+
+    private static RoaringBitmap startingWith(Postings keyPostings, String prefix) {
+        List<RoaringBitmap> matched = new ArrayList<>();
+        for (var term : keyPostings.terms.tailMap(prefix, true).entrySet()) {
+            if (!term.getKey().startsWith(prefix)) {
+                break;
+            }
+            matched.add(term.getValue());
+        }
+        return FastAggregation.or(matched.iterator());
+    }
+
+    private static RoaringBitmap endingWith(Postings keyPostings, String suffix) {
+        List<RoaringBitmap> matched = new ArrayList<>();
+        String reversedSuffix = reverse(suffix);
+        for (var term : keyPostings.reversedTerms.tailMap(reversedSuffix, true).entrySet()) {
+            if (!term.getKey().startsWith(reversedSuffix)) {
+                break;
+            }
+            matched.add(term.getValue());
+        }
+        for (String term : keyPostings.longTerms) {
+            if (term.endsWith(suffix)) {
+                matched.add(keyPostings.terms.get(term));
+            }
+        }
+        return FastAggregation.or(matched.iterator());
+    }
+
+    // char by char so a value ends with a suffix exactly when it starts with it backwards
+    private static String reverse(String value) {
+        char[] chars = new char[value.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = value.charAt(chars.length - 1 - i);
+        }
+        return new String(chars);
+    }
+
+    // The strings a value matches without an operator and its numbers and dates
+    private static Indexed indexed(Object value) {
+        Collection<?> elements;
+        if (value instanceof List<?> list) {
+            elements = list;
+        } else if (value instanceof String[] array) {
+            elements = Arrays.asList(array);
+        } else {
+            elements = Collections.singletonList(value);
+        }
+
+        Set<String> terms = new LinkedHashSet<>();
+        List<Typed> typed = new ArrayList<>(0);
+        for (Object element : elements) {
+            if (element instanceof String string) {
+                terms.add(string);
+            }
+            TypedValue typedValue = element instanceof Boolean ? null : TypedValue.of(element);
+            if (typedValue != null) {
+                typed.add(new Typed(typedValue, element instanceof String));
+            }
+        }
+        return new Indexed(terms.toArray(new String[0]), typed.toArray(new Typed[0]));
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.pskenny.repo.index;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.List;
+
+// The numbers (or dates) of one property sorted in primitive arrays with the id of the file each came from, so a
+// range is two binary searches. Values read from text only count for ranges, like Search.
+class SortedValues {
+    private final double[] values;
+    private final int[] ids;
+    private final boolean[] fromText;
+
+    record Value(int id, double value, boolean fromText) {}
+
+    SortedValues(List<Value> unsorted) {
+        Value[] sorted = unsorted.toArray(new Value[0]);
+        Arrays.sort(sorted, (a, b) -> Double.compare(a.value(), b.value()));
+        values = new double[sorted.length];
+        ids = new int[sorted.length];
+        fromText = new boolean[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            values[i] = sorted[i].value();
+            ids[i] = sorted[i].id();
+            fromText[i] = sorted[i].fromText();
+        }
+    }
+
+    RoaringBitmap greaterThan(double bound) {
+        return ids(firstAfter(bound), values.length, false);
+    }
+
+    RoaringBitmap lessThan(double bound) {
+        return ids(0, firstNotBefore(bound), false);
+    }
+
+    RoaringBitmap equalTo(double value) {
+        return ids(firstNotBefore(value), firstAfter(value), true);
+    }
+
+    private RoaringBitmap ids(int from, int to, boolean skipText) {
+        RoaringBitmap matched = new RoaringBitmap();
+        for (int i = from; i < to; i++) {
+            if (!skipText || !fromText[i]) {
+                matched.add(ids[i]);
+            }
+        }
+        return matched;
+    }
+
+    // index of the first value >= bound
+    private int firstNotBefore(double bound) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < bound) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // index of the first value > bound
+    private int firstAfter(double bound) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= bound) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
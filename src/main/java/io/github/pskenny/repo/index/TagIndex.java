@@ -0,0 +1,39 @@
+package io.github.pskenny.repo.index;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/*
+The files with each tag, a tag being the tags property or a string in it. These are the same posting lists
+PropertyIndex answers tags= searches from, read through as PropertyIndex has them, so the graph and searches see one
+copy of tag membership.
+ */
+public class TagIndex {
+    public static final String PROPERTY = "tags";
+    private static final RoaringBitmap NONE = new RoaringBitmap();
+
+    // PropertyIndex's postings for the tags property
+    private final TreeMap<String, RoaringBitmap> files;
+
+    TagIndex(TreeMap<String, RoaringBitmap> files) {
+        this.files = files;
+    }
+
+    // ids of the files with the tag, don't change it
+    public RoaringBitmap files(String tag) {
+        return files.getOrDefault(tag, NONE);
+    }
+
+    public int size() {
+        return files.size();
+    }
+
+    public void forEach(BiConsumer<String, RoaringBitmap> action) {
+        for (Map.Entry<String, RoaringBitmap> tag : files.entrySet()) {
+            action.accept(tag.getKey(), tag.getValue());
+        }
+    }
+}
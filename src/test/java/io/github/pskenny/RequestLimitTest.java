@@ -0,0 +1,32 @@
+package io.github.pskenny;
+
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.Header;
+import io.javalin.http.ServiceUnavailableResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class RequestLimitTest {
+
+    @Test
+    public void givenLimitReached_whenHandling_respondUnavailableUntilOneFinishes() throws Exception {
+        RequestLimit limit = new RequestLimit(1, 0);
+        AtomicInteger handled = new AtomicInteger();
+        Handler inner = limit.limit(ctx -> handled.incrementAndGet());
+        Context ctx = mock(Context.class);
+
+        limit.limit(outerCtx -> assertThrows(ServiceUnavailableResponse.class, () -> inner.handle(outerCtx)))
+                .handle(ctx);
+        verify(ctx).header(Header.RETRY_AFTER, "1");
+        assertEquals(0, handled.get());
+
+        inner.handle(ctx);
+        assertEquals(1, handled.get());
+    }
+}
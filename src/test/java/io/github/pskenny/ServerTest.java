@@ -1,5 +1,7 @@
 package io.github.pskenny;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import io.javalin.Javalin;
 import org.junit.jupiter.api.*;
 
@@ -11,15 +13,19 @@ import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import static io.github.pskenny.test.FileUtil.createFile;
 import static io.github.pskenny.test.FileUtil.readFile;
 import static io.github.pskenny.test.JsonUtil.assertJsonEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ServerTest {
@@ -28,6 +34,7 @@ public class ServerTest {
     private static final String BASE_URL = "http://localhost:" + TEST_PORT;
     private static final Path TEST_DIR = Paths.get("target", "test-notes", ServerTest.class.getSimpleName());
     private static Javalin app;
+    private static Server server;
 
     @BeforeEach
     void setup() {
@@ -53,8 +60,12 @@ public class ServerTest {
     }
 
     void startServer() {
-        Server serverInstance = new Server(TEST_DIR.toAbsolutePath().toString());
-        app = serverInstance.getJavalinApp();
+        startServer(new Server(TEST_DIR.toAbsolutePath().toString()));
+    }
+
+    void startServer(Server server) {
+        ServerTest.server = server;
+        app = server.getJavalinApp();
         app.start(TEST_PORT);
     }
 
@@ -215,4 +226,167 @@ No links
         stopServer();
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("GET /files/list returns files with frontmatter keys that aren't text")
+    void testFilesListNumberKeys() throws IOException, InterruptedException {
+        Files.writeString(TEST_DIR.resolve("log.md"), "---\n2024: done\ntags: log\n---\n");
+
+        startServer();
+        HttpClient client = HttpClient.newHttpClient();
+
+        JsonObject list = getJson(client, "/files/list?tags=log");
+        assertEquals("done", list.getAsJsonArray("files").get(0).getAsJsonObject().get("2024").getAsString());
+        JsonObject graph = getJson(client, "/files/list/graph?tags=log");
+        assertEquals("log.md", filePath(graph, 0));
+
+        stopServer();
+    }
+
+    @Test
+    @DisplayName("GET /files/list with limit pages through the files with a cursor")
+    void testFilesListPages() throws IOException, InterruptedException {
+        createFile(TEST_DIR, "a.md", Map.of("tags", "page"));
+        createFile(TEST_DIR, "b.md", Map.of("tags", "page"));
+        createFile(TEST_DIR, "c.md", Map.of("tags", "page"));
+        createFile(TEST_DIR, "d.md", Map.of("tags", "other"));
+
+        startServer();
+        HttpClient client = HttpClient.newHttpClient();
+
+        JsonObject first = getJson(client, "/files/list?tags=page&limit=2");
+        assertEquals(2, first.get("resultSize").getAsInt());
+        assertEquals(3, first.get("total").getAsInt());
+        assertEquals("a.md", filePath(first, 0));
+        assertEquals("b.md", filePath(first, 1));
+
+        JsonObject second = getJson(client, "/files/list?tags=page&limit=2&cursor=" + first.get("cursor").getAsString());
+        assertEquals(1, second.get("resultSize").getAsInt());
+        assertEquals("c.md", filePath(second, 0));
+        assertFalse(second.has("cursor"));
+
+        JsonObject newestFirst = getJson(client, "/files/list?tags=page&sort=-id&limit=1");
+        assertEquals("c.md", filePath(newestFirst, 0));
+
+        HttpResponse<String> badCursor = client.send(HttpRequest.newBuilder()
+                .uri(URI.create(BASE_URL + "/files/list?limit=2&cursor=nope")).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(400, badCursor.statusCode());
+
+        stopServer();
+    }
+
+    @Test
+    @DisplayName("GET /files/list/graph with the response's ETag returns 304 Not Modified")
+    void testConditionalGet() throws IOException, InterruptedException {
+        createFile(TEST_DIR, "a.md", Map.of("tags", "etag"));
+
+        startServer();
+        HttpClient client = HttpClient.newHttpClient();
+        URI uri = URI.create(BASE_URL + "/files/list/graph?tags=etag");
+        HttpResponse<String> first = client.send(HttpRequest.newBuilder().uri(uri).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+        String lastModified = first.headers().firstValue("Last-Modified").orElseThrow();
+
+        HttpResponse<String> revalidated = client.send(HttpRequest.newBuilder().uri(uri)
+                .header("If-None-Match", etag).GET().build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(304, revalidated.statusCode());
+        assertTrue(revalidated.body().isEmpty());
+
+        HttpResponse<String> sinceModified = client.send(HttpRequest.newBuilder().uri(uri)
+                .header("If-Modified-Since", lastModified).GET().build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(304, sinceModified.statusCode());
+
+        HttpResponse<String> otherQuery = client.send(HttpRequest.newBuilder()
+                .uri(URI.create(BASE_URL + "/files/list/graph?tags=other"))
+                .header("If-None-Match", etag).GET().build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, otherQuery.statusCode());
+
+        stopServer();
+    }
+
+    @Test
+    @DisplayName("GET with If-Modified-Since after updates in the same second returns 200")
+    void testIfModifiedSinceAfterQuickUpdates() throws IOException, InterruptedException {
+        createFile(TEST_DIR, "a.md", Map.of("tags", "modified"));
+
+        startServer();
+        HttpClient client = HttpClient.newHttpClient();
+        URI uri = URI.create(BASE_URL + "/files/list?tags=modified");
+        String lastModified = client.send(HttpRequest.newBuilder().uri(uri).GET().build(),
+                HttpResponse.BodyHandlers.ofString()).headers().firstValue("Last-Modified").orElseThrow();
+
+        // two updates, well within a second of each other
+        for (String tags : List.of("modified, first", "modified, second update")) {
+            createFile(TEST_DIR, "a.md", Map.of("tags", tags));
+            server.getRepository().refresh(Set.of("a.md"));
+            HttpResponse<String> revalidated = client.send(HttpRequest.newBuilder().uri(uri)
+                    .header("If-Modified-Since", lastModified).GET().build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, revalidated.statusCode());
+            String newLastModified = revalidated.headers().firstValue("Last-Modified").orElseThrow();
+            assertNotEquals(lastModified, newLastModified);
+            lastModified = newLastModified;
+        }
+
+        stopServer();
+    }
+
+    @Test
+    void testMetrics() throws IOException, InterruptedException {
+        createFile(TEST_DIR, "a.md", Map.of("tags", "metrics"));
+
+        startServer();
+        HttpClient client = HttpClient.newHttpClient();
+        getJson(client, "/files/list?tags=metrics");
+        getJson(client, "/files/list?tags=metrics");
+        HttpResponse<String> missing = client.send(HttpRequest.newBuilder()
+                .uri(URI.create(BASE_URL + "/missing")).GET().build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(404, missing.statusCode());
+        // another server's files and requests aren't this one's
+        Files.createDirectories(TEST_DIR.resolve("other"));
+        new Server(TEST_DIR.resolve("other").toAbsolutePath().toString());
+
+        HttpResponse<String> metrics = client.send(HttpRequest.newBuilder()
+                .uri(URI.create(BASE_URL + "/metrics")).GET().build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, metrics.statusCode());
+        assertTrue(metrics.headers().firstValue("Content-Type").orElseThrow().startsWith("text/plain"));
+        String body = metrics.body();
+        assertTrue(body.contains("# TYPE pkspkms_http_request_duration_seconds histogram\n"), body);
+        assertTrue(body.contains("pkspkms_http_request_duration_seconds_bucket{route=\"/files/list\",le=\"+Inf\"} "), body);
+        assertTrue(body.contains("pkspkms_search_responses_total{route=\"/files/list\",result=\"cached\"} "), body);
+        assertTrue(body.contains("pkspkms_search_responses_total{route=\"/files/list\",result=\"searched\"} "), body);
+        assertTrue(body.contains("\npkspkms_files 1\n"), body);
+        assertTrue(body.contains("pkspkms_load_phase_seconds{phase=\"read\"} "), body);
+        assertTrue(body.contains("pkspkms_update_duration_seconds_count "), body);
+
+        stopServer();
+    }
+
+    @Test
+    void testStartupProfile() throws IOException, InterruptedException {
+        createFile(TEST_DIR, "a.md", Map.of("tags", "profile"));
+        createFile(TEST_DIR, "b.md", Map.of("tags", "profile"));
+
+        startServer(new Server(new Server.ServerConfig(TEST_DIR.toAbsolutePath().toString(), 1, false, null, false,
+                false, Server.DEFAULT_MAX_REQUESTS, 0, true)));
+        JsonObject profile = getJson(HttpClient.newHttpClient(), "/profile/startup?slowest=1");
+        assertEquals(2, profile.get("files").getAsInt());
+        assertEquals(1, profile.getAsJsonArray("slowestFiles").size());
+        List<String> phases = new ArrayList<>();
+        profile.getAsJsonArray("phases").forEach(phase -> phases.add(phase.getAsJsonObject().get("name").getAsString()));
+        assertTrue(phases.containsAll(List.of("read", "wikilinks", "transform", "links", "index")), phases.toString());
+
+        stopServer();
+    }
+
+    private static JsonObject getJson(HttpClient client, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(BASE_URL + path)).GET().build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), path + " should return HTTP 200 OK.");
+        return JsonParser.parseString(response.body()).getAsJsonObject();
+    }
+
+    private static String filePath(JsonObject response, int index) {
+        return response.getAsJsonArray("files").get(index).getAsJsonObject().get("filePath").getAsString();
+    }
+}
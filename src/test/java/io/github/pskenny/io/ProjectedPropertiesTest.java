@@ -0,0 +1,44 @@
+package io.github.pskenny.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProjectedPropertiesTest {
+
+    @Test
+    public void givenProjection_whenViewing_onlyHaveProjectedProperties() {
+        PksFile file = file();
+
+        assertEquals(Map.of("filePath", "a.md", "tags", List.of("tag1")),
+                PksFile.view(file, Projection.GRAPH).getProperties());
+        assertEquals(Map.of("filePath", "a.md", "tags", List.of("tag1"), "status", "done"),
+                PksFile.view(file, Projection.WITHOUT_CONTENT).getProperties());
+        assertEquals(file.getProperties(), PksFile.view(file, Projection.ALL).getProperties());
+        assertNull(PksFile.view(file, Projection.GRAPH).getProperties().get("content"));
+        assertFalse(PksFile.view(file, Projection.WITHOUT_CONTENT).getProperties().containsKey("content"));
+    }
+
+    @Test
+    public void givenView_whenChanging_throwAndLeaveFileAsIs() {
+        PksFile file = file();
+        Map<String, Object> view = PksFile.view(file, Projection.ALL).getProperties();
+
+        assertThrows(UnsupportedOperationException.class, () -> view.put("status", "todo"));
+        assertThrows(UnsupportedOperationException.class, () -> view.remove("status"));
+        assertThrows(UnsupportedOperationException.class, () -> view.entrySet().iterator().next().setValue("x"));
+        assertEquals("done", file.getProperties().get("status"));
+    }
+
+    private static PksFile file() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("tags", List.of("tag1"));
+        properties.put("status", "done");
+        properties.put("content", "# A");
+        return new PksFile("a.md", properties);
+    }
+}
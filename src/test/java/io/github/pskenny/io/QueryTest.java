@@ -0,0 +1,54 @@
+package io.github.pskenny.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryTest {
+
+    @Test
+    public void givenSameParametersInAnotherOrder_whenCompiling_returnCachedQuery() {
+        Query query = Query.compile("tags=tag1&status=done&tags=tag2");
+
+        assertSame(query, Query.compile("status=done&tags=tag2&tags=tag1"));
+        assertSame(query, Query.compile(Map.of("tags", List.of("tag2", "tag1"), "status", List.of("done"))));
+        assertNotSame(query, Query.compile("status=done&tags=tag1"));
+    }
+
+    @Test
+    public void givenOperators_whenCompiling_stripOperatorsOnce() {
+        Query query = Query.compile("a=pre*&b=*suf&c=>3&d=<2025-01-01&e&!f=&!g=x");
+
+        assertEquals(List.of(
+                new Query.Clause("a", Query.Operator.PREFIX, "pre", null, false),
+                new Query.Clause("b", Query.Operator.SUFFIX, "suf", null, false),
+                new Query.Clause("c", Query.Operator.GREATER, "3", new TypedValue(false, 3), false),
+                new Query.Clause("d", Query.Operator.LESS, "2025-01-01", new TypedValue(true, 1735689600000L), false),
+                new Query.Clause("e", Query.Operator.HAS, "", null, false)
+        ), query.inclusions());
+        // an empty exclusion compares the property to the empty string
+        assertEquals(List.of(
+                new Query.Clause("f", Query.Operator.EQUALS, "", null, false),
+                new Query.Clause("g", Query.Operator.EQUALS, "x", null, false)
+        ), query.exclusions());
+    }
+
+    @Test
+    public void givenNumberTooBigToParse_whenCompiling_treatAsNotNumber() {
+        Query query = Query.compile("x=>1e9999999999");
+
+        assertEquals(List.of(new Query.Clause("x", Query.Operator.GREATER, "1e9999999999", null, false)),
+                query.inclusions());
+        assertFalse(query.matches(Map.of("x", 5)));
+        assertFalse(Query.compile("x=>1").matches(Map.of("x", "1e9999999999")));
+    }
+
+    @Test
+    public void givenEmptyQuery_whenMatching_matchEverything() {
+        assertTrue(Query.compile("").isEmpty());
+        assertTrue(Query.compile("").matches(Map.of()));
+    }
+}
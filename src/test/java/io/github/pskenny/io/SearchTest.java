@@ -2,6 +2,7 @@ package io.github.pskenny.io;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -148,6 +149,47 @@ public class SearchTest {
         assertEquals(1, results.size());
     }
 
+    @Test
+    public void testNumberRanges() {
+        Map<String, Object> file1Properties = new HashMap<>();
+        file1Properties.put("priority", "2");
+        PksFile file1 = getFile("file1.md", file1Properties);
+
+        Map<String, Object> file2Properties = new HashMap<>();
+        file2Properties.put("priority", 5L);
+        PksFile file2 = getFile("file2.md", file2Properties);
+
+        Map<String, Object> file3Properties = new HashMap<>();
+        file3Properties.put("priority", 3.5);
+        PksFile file3 = getFile("file3.md", file3Properties);
+
+        assertEquals(Set.of(file1), search(getParameters("priority", "<3"), file1, file2, file3));
+        assertEquals(Set.of(file2, file3), search(getParameters("priority", ">3"), file1, file2, file3));
+        assertEquals(Set.of(file3), search(getParameters("priority", "3.5"), file1, file2, file3));
+    }
+
+    @Test
+    public void testDateRanges() {
+        Map<String, Object> file1Properties = new HashMap<>();
+        // YAML timestamps are loaded as dates
+        file1Properties.put("created", new Date(1735776000000L)); // 2025-01-02
+        PksFile file1 = getFile("file1.md", file1Properties);
+
+        Map<String, Object> file2Properties = new HashMap<>();
+        file2Properties.put("created", "2024-12-31");
+        PksFile file2 = getFile("file2.md", file2Properties);
+
+        assertEquals(Set.of(file1), search(getParameters("created", ">2025-01-01"), file1, file2));
+        assertEquals(Set.of(file2), search(getParameters("created", "<2025-01-01"), file1, file2));
+        assertEquals(Set.of(file1), search(getParameters("created", "2025-01-02"), file1, file2));
+    }
+
+    private Set<PksFile> search(Map<String, List<String>> params, PksFile... files) {
+        return Stream.of(files)
+                .filter(pksFile -> Search.matchesProperties(pksFile, params))
+                .collect(Collectors.toSet());
+    }
+
     private Map<String, List<String>> getParameters() {
         return getParameters(FILE_PROPERTY_TAGS_EXCLUSION, "tag4", "tag5");
     }
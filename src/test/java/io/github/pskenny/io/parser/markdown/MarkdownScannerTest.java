@@ -0,0 +1,127 @@
+package io.github.pskenny.io.parser.markdown;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class MarkdownScannerTest {
+    // The patterns the scanner replaced, it has to find the same matches
+    private static final Pattern LINK = Pattern.compile("\\[(.*?)\\]\\((.*?)\\)");
+    private static final Pattern WIKILINK = Pattern.compile("(?<!~)\\[\\[(.*?)\\]\\]");
+    private static final Pattern BASE = Pattern.compile("(?s)```base(.*?)```");
+    private static final Pattern FRONTMATTER = Pattern.compile("^---\\s*$(.*?)^---\\s*$", Pattern.MULTILINE | Pattern.DOTALL);
+
+    @Test
+    void givenMarkdown_whenScanning_findLinksWikilinksAndBases() {
+        String content = """
+                ---
+                title: Example
+                ---
+                A [link](Notes/Link.md) and a [[Wikilink|alias]], not ~[[this one]].
+                ```base
+                views:
+                  - type: table
+                ```
+                """;
+
+        ScannedMarkdown markdown = MarkdownScanner.scan(content);
+
+        assertEquals("title: Example", markdown.frontmatter().trim());
+        assertEquals(List.of("Notes/Link.md"), values(markdown.links()));
+        assertEquals(List.of("Wikilink|alias"), values(markdown.wikilinks()));
+        assertEquals(1, markdown.baseBlocks().size());
+        ScannedMarkdown.Span link = markdown.links().get(0);
+        assertEquals("[link](Notes/Link.md)", content.substring(link.start(), link.end()));
+    }
+
+    @Test
+    void givenNoFrontmatterAtStart_whenScanning_returnNoFrontmatter() {
+        assertNull(MarkdownScanner.scan("text\n---\na: b\n---\n").frontmatter());
+        assertNull(MarkdownScanner.scan("--- a\nb: c\n---\n").frontmatter());
+        assertNull(MarkdownScanner.scan("---\na: b\n").frontmatter());
+    }
+
+    @Test
+    void givenTrickyContent_whenScanning_matchOriginalPatterns() {
+        List<String> contents = List.of(
+                "",
+                "[",
+                "[[",
+                "[a](b",
+                "[a]\n(b)",
+                "[a](b\n) [c](d)",
+                "[a] [b](c) ](d)",
+                "[[a]] [[b]",
+                "[[[a]]]",
+                "[[a\n]] [[b]]",
+                "~[[a]] [[b]]~[[c]]",
+                "[[]] [](x) []()",
+                "[a [b](c)](d)",
+                "```base\na\n```\n```base\nb",
+                "````base``````base```",
+                "```base",
+                "---\r\na: b\r\n---\r\n[x](y)\r\n",
+                "---  \n\n  a: b\n---\t\n",
+                "---\n---\n",
+                "---\na: b\n---",
+                "---\na: b\n----\n---\n",
+                "---\na: b ---\n[é](ü) [[日本]] [😀](🚀)\u0085[x](y )",
+                "héllo [ä](ö)\r[[ß\r]] ```base\n€\n```");
+
+        for (String content : contents) {
+            assertMatchesPatterns(content);
+        }
+    }
+
+    @Test
+    void givenExampleNotes_whenScanning_matchOriginalPatterns() throws IOException {
+        try (Stream<Path> paths = Files.find(Paths.get("test/data"), Integer.MAX_VALUE,
+                (path, attributes) -> attributes.isRegularFile() && path.toString().endsWith(".md"))) {
+            for (Path path : paths.toList()) {
+                ScannedMarkdown markdown = MarkdownScanner.scan(Files.readAllBytes(path));
+                assertMatchesPatterns(Files.readString(path, StandardCharsets.UTF_8), markdown);
+            }
+        }
+    }
+
+    private static void assertMatchesPatterns(String content) {
+        assertMatchesPatterns(content, MarkdownScanner.scan(content));
+        assertMatchesPatterns(content, MarkdownScanner.scan(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void assertMatchesPatterns(String content, ScannedMarkdown markdown) {
+        assertEquals(content, markdown.content());
+        assertEquals(matches(LINK, 2, content), markdown.links(), content);
+        assertEquals(matches(WIKILINK, 1, content), markdown.wikilinks(), content);
+        assertEquals(matches(BASE, 1, content), markdown.baseBlocks(), content);
+
+        Matcher matcher = FRONTMATTER.matcher(content);
+        String frontmatter = matcher.find() && matcher.start() == 0 ? matcher.group(1).trim() : null;
+        assertEquals(frontmatter, markdown.frontmatter() == null ? null : markdown.frontmatter().trim(), content);
+    }
+
+    private static List<ScannedMarkdown.Span> matches(Pattern pattern, int group, String content) {
+        List<ScannedMarkdown.Span> spans = new ArrayList<>();
+        Matcher matcher = pattern.matcher(content);
+        while (matcher.find()) {
+            spans.add(new ScannedMarkdown.Span(matcher.start(), matcher.end(), matcher.group(group)));
+        }
+        return spans;
+    }
+
+    private static List<String> values(List<ScannedMarkdown.Span> spans) {
+        return spans.stream().map(ScannedMarkdown.Span::value).toList();
+    }
+}
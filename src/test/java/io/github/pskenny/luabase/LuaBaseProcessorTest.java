@@ -7,8 +7,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 /*
 More filters that don't work:
@@ -196,4 +198,34 @@ public class LuaBaseProcessorTest {
 
         assertEquals(expected, actual);
     }
+
+    @Test
+    public void givenBase_whenGettingProperties_returnPropertiesItReads() {
+        final String luaBaseYaml = """
+        formulas:
+          ppu: 'return getPropertyValue(file, "price", 0) * 5'
+        views:
+          - type: table
+            filters:
+              and:
+                - 'not hasPropertyValue(file, "tag", "book")'
+            order:
+              - 'ppu(file), "PPU"'
+              - 'file:get("status"), "Status"'
+            sort:
+              - property: age
+                direction: ASC
+            """;
+        LuaBaseProcessor processor = new LuaBaseProcessor(new YamlBaseParser().parse(luaBaseYaml));
+        assertEquals(Set.of("price", "tag", "status", "age"), processor.properties());
+
+        final String unknownYaml = """
+        views:
+          - type: table
+            filters:
+              and:
+                - 'file.inFolder("images")'
+            """;
+        assertNull(new LuaBaseProcessor(new YamlBaseParser().parse(unknownYaml)).properties());
+    }
 }
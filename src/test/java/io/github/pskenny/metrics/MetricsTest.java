@@ -0,0 +1,36 @@
+package io.github.pskenny.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    @Test
+    public void givenMetrics_whenWriting_usePrometheusTextFormat() throws IOException {
+        Metrics metrics = new Metrics();
+        metrics.counter("requests_total", "Requests", "route", "/a\"b").add(3);
+        metrics.gauge("files", "Files").set(2);
+        Metrics.Histogram timer = metrics.timer("duration_seconds", "Time");
+        timer.observe(0.0001);
+        timer.observe(0.003);
+        timer.observe(60);
+
+        StringWriter out = new StringWriter();
+        metrics.write(out);
+        String text = out.toString();
+
+        assertTrue(text.contains("# TYPE requests_total counter\nrequests_total{route=\"/a\\\"b\"} 3\n"), text);
+        assertTrue(text.contains("# TYPE files gauge\nfiles 2\n"), text);
+        assertTrue(text.contains("duration_seconds_bucket{le=\"0.0005\"} 1\n"), text);
+        assertTrue(text.contains("duration_seconds_bucket{le=\"0.005\"} 2\n"), text);
+        assertTrue(text.contains("duration_seconds_bucket{le=\"30\"} 2\n"), text);
+        assertTrue(text.contains("duration_seconds_bucket{le=\"+Inf\"} 3\n"), text);
+        assertTrue(text.contains("duration_seconds_count 3\n"), text);
+        assertSame(timer, metrics.timer("duration_seconds", "Time"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.counter("files", "Files"));
+    }
+}
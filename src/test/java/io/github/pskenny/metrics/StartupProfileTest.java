@@ -0,0 +1,61 @@
+package io.github.pskenny.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StartupProfileTest {
+
+    @Test
+    public void givenNestedPhases_whenReporting_timeEachPhaseOnItsOwn() {
+        StartupProfile profile = new StartupProfile(true);
+        profile.time("outer", () -> {
+            sleep(20);
+            profile.time("inner", () -> sleep(20));
+        });
+        profile.fileCost(StartupProfile.Cost.PARSE, "a.md", 1_000_000);
+        profile.fileCost(StartupProfile.Cost.PARSE, "b.md", 3_000_000);
+        profile.fileCost(StartupProfile.Cost.BASES, "a.md", 5_000_000);
+        profile.finish(new Metrics());
+        // nothing counts after startup
+        profile.fileCost(StartupProfile.Cost.PARSE, "c.md", 1_000_000);
+
+        StartupProfile.Report report = profile.report(1);
+        List<String> phases = report.phases().stream().map(StartupProfile.Phase::name).toList();
+        assertEquals(List.of("other", "outer", "inner"), phases);
+        double outer = report.phases().get(1).wallMillis();
+        double inner = report.phases().get(2).wallMillis();
+        assertTrue(outer >= 20, "outer " + outer);
+        assertTrue(inner >= 20, "inner " + inner);
+        double phaseTotal = report.phases().stream().mapToDouble(StartupProfile.Phase::wallMillis).sum();
+        assertEquals(report.wallMillis(), phaseTotal, 0.1);
+
+        assertEquals(2, report.files());
+        assertEquals(4, report.parseMillis());
+        assertEquals(List.of(new StartupProfile.FileCost("a.md", 1, 5, 0)), report.slowestFiles());
+        assertTrue(profile.format(1).contains("a.md"));
+    }
+
+    @Test
+    public void givenFileCostsNotKept_whenReporting_onlyHavePhases() {
+        StartupProfile profile = new StartupProfile(false);
+        assertEquals(3, profile.time("read", () -> 3));
+        profile.fileCost(StartupProfile.Cost.PARSE, "a.md", 1_000_000);
+        profile.finish(new Metrics());
+
+        StartupProfile.Report report = profile.report(1);
+        assertEquals(List.of("other", "read"), report.phases().stream().map(StartupProfile.Phase::name).toList());
+        assertEquals(0, report.files());
+        assertTrue(report.slowestFiles().isEmpty());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.pskenny.repo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static io.github.pskenny.test.FileUtil.createFile;
+import static io.github.pskenny.test.FileUtil.deleteDirectory;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DirectoryWatcherTest {
+    private static final Path TEST_DIR = Paths.get("target", "test-notes", DirectoryWatcherTest.class.getSimpleName());
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @BeforeEach
+    void setup() throws IOException {
+        deleteDirectory(TEST_DIR);
+        Files.createDirectories(TEST_DIR);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        deleteDirectory(TEST_DIR);
+    }
+
+    @Test
+    public void givenWatchedDirectory_whenFilesChange_updateRepository() throws IOException, InterruptedException {
+        createFile(TEST_DIR, "note.md", Map.of("tags", "before"));
+        InMemoryFileRepository repository = new InMemoryFileRepository(TEST_DIR.toString());
+
+        try (DirectoryWatcher watcher = new DirectoryWatcher(repository, TEST_DIR.toString(), 50)) {
+            watcher.start();
+
+            createFile(TEST_DIR, "note.md", Map.of("tags", "after"));
+            Files.createDirectories(TEST_DIR.resolve("dir"));
+            createFile(TEST_DIR.resolve("dir"), "new.md", Map.of("tags", "new"));
+
+            waitFor(() -> repository.search("tags=new").size() == 1);
+            waitFor(() -> repository.search("tags=after").size() == 1);
+
+            Files.delete(TEST_DIR.resolve("note.md"));
+            waitFor(() -> repository.search("tags=after").isEmpty());
+        }
+
+        assertEquals(1, repository.getFilePaths().size());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < end) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean(), "Repository wasn't updated in time");
+    }
+}
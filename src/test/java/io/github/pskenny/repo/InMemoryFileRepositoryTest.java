@@ -0,0 +1,215 @@
+package io.github.pskenny.repo;
+
+import io.github.pskenny.io.PksFile;
+import io.github.pskenny.io.Projection;
+import io.github.pskenny.io.Query;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static io.github.pskenny.test.FileUtil.copyDirectory;
+import static io.github.pskenny.test.FileUtil.deleteDirectory;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryFileRepositoryTest {
+    private static final String PKMS_EXAMPLES = "test/data/pkms-examples";
+    private static final Path TEST_DIR = Paths.get("target", "test-notes", InMemoryFileRepositoryTest.class.getSimpleName());
+
+    @BeforeEach
+    void setup() throws IOException {
+        deleteDirectory(TEST_DIR);
+        copyDirectory(Paths.get(PKMS_EXAMPLES, "example"), TEST_DIR);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        deleteDirectory(TEST_DIR);
+    }
+
+    @Test
+    public void givenParallelism_whenReading_returnSameFilesAsSequentialRead() {
+        Map<String, PksFile> sequential = new InMemoryFileRepository(PKMS_EXAMPLES, 1).getAllPksFiles();
+        Map<String, PksFile> parallel = new InMemoryFileRepository(PKMS_EXAMPLES, 4).getAllPksFiles();
+
+        assertSameFiles(sequential, parallel);
+    }
+
+    @Test
+    public void givenEveryProcessor_whenReading_readInParallelWhenThereIsMoreThanOne() {
+        InMemoryFileRepository sequential = new InMemoryFileRepository(PKMS_EXAMPLES, 1);
+        InMemoryFileRepository everyProcessor = new InMemoryFileRepository(PKMS_EXAMPLES, 0);
+
+        assertFalse(sequential.readsInParallel());
+        assertEquals(Runtime.getRuntime().availableProcessors() > 1, everyProcessor.readsInParallel());
+        assertSameFiles(sequential.getAllPksFiles(), everyProcessor.getAllPksFiles());
+    }
+
+    @Test
+    public void givenSnapshot_whenReading_returnSameFilesAsFullRead() {
+        Path snapshot = SnapshotStore.defaultPath(TEST_DIR.toString());
+        Map<String, PksFile> read = new InMemoryFileRepository(TEST_DIR.toString(), 1, snapshot).getAllPksFiles();
+        assertTrue(Files.exists(snapshot));
+
+        Map<String, PksFile> loaded = new InMemoryFileRepository(TEST_DIR.toString(), 1, snapshot).getAllPksFiles();
+
+        assertSameFiles(read, loaded);
+        assertFalse(loaded.keySet().stream().anyMatch(filePath -> filePath.startsWith(SnapshotStore.DIRECTORY)));
+    }
+
+    @Test
+    public void givenChangedFile_whenLoadingSnapshot_readChangedFileAgain() throws IOException {
+        Path snapshot = SnapshotStore.defaultPath(TEST_DIR.toString());
+        new InMemoryFileRepository(TEST_DIR.toString(), 1, snapshot);
+
+        Path task = TEST_DIR.resolve("Notes/Tasks/Task.md");
+        Files.writeString(task, "\n[New link](../../Example.md)\n", StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(task, FileTime.fromMillis(Files.getLastModifiedTime(task).toMillis() + 2000));
+
+        Map<String, PksFile> loaded = new InMemoryFileRepository(TEST_DIR.toString(), 1, snapshot).getAllPksFiles();
+
+        assertEquals(List.of("../../Example.md"), loaded.get("Notes/Tasks/Task.md").getProperties().get("links"));
+        assertSameFiles(new InMemoryFileRepository(TEST_DIR.toString()).getAllPksFiles(), loaded);
+    }
+
+    @Test
+    public void givenRenamedFile_whenRefreshing_resolveWikilinksToNewPath() throws IOException {
+        InMemoryFileRepository repository = new InMemoryFileRepository(TEST_DIR.toString());
+        assertTrue(((List<?>) repository.getAllPksFiles().get("Notes/PKSPKMS.md").getProperties().get("links"))
+                .contains("Notes/Resolved Wikilink.md"));
+
+        Files.move(TEST_DIR.resolve("Notes/Resolved Wikilink.md"), TEST_DIR.resolve("Notes/Renamed.md"));
+        repository.refresh(Set.of("Notes/Resolved Wikilink.md", "Notes/Renamed.md"));
+
+        List<?> links = (List<?>) repository.getAllPksFiles().get("Notes/PKSPKMS.md").getProperties().get("links");
+        assertTrue(links.contains("Notes/Renamed.md"));
+        assertFalse(links.contains("Notes/Resolved Wikilink.md"));
+        assertSameFiles(new InMemoryFileRepository(TEST_DIR.toString()).getAllPksFiles(), repository.getAllPksFiles());
+    }
+
+    @Test
+    public void givenRelativeAndDirectoryLinks_whenSearching_resolveBacklinksToSameFile() {
+        InMemoryFileRepository repository = new InMemoryFileRepository(TEST_DIR.toString());
+
+        Map<String, PksFile> image = repository.search(Query.compile("filePath=Resources/Neumann.jpg"), Projection.GRAPH);
+        assertEquals(List.of("Example.md", "Notes/PKSPKMS.md"),
+                image.get("Resources/Neumann.jpg").getProperties().get("backlinks"));
+        Map<String, PksFile> note = repository.search(Query.compile("filePath=Notes/Resolved Wikilink.md"), Projection.GRAPH);
+        assertEquals(List.of("Notes/PKSPKMS.md"), note.get("Notes/Resolved Wikilink.md").getProperties().get("backlinks"));
+    }
+
+    @Test
+    public void givenSnapshot_whenRefreshing_keepSnapshotFiles() throws IOException {
+        InMemoryFileRepository repository = new InMemoryFileRepository(TEST_DIR.toString());
+        RepositorySnapshot snapshot = repository.snapshot();
+        PksFile task = snapshot.file("Notes/Tasks/Task.md");
+        Object taskLinks = task.getProperties().get("links");
+
+        Path taskPath = TEST_DIR.resolve("Notes/Tasks/Task.md");
+        Files.writeString(taskPath, "\n[New link](../../Example.md)\n", StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(taskPath, FileTime.fromMillis(Files.getLastModifiedTime(taskPath).toMillis() + 2000));
+        Files.delete(TEST_DIR.resolve("Example.md"));
+        repository.refresh(Set.of("Notes/Tasks/Task.md", "Example.md"));
+
+        assertEquals(snapshot.generation() + 1, repository.snapshot().generation());
+        assertSame(task, snapshot.file("Notes/Tasks/Task.md"));
+        assertEquals(taskLinks, task.getProperties().get("links"));
+        assertNotNull(snapshot.file("Example.md"));
+        assertEquals(1, snapshot.search(Query.compile("filePath=Example.md"), Projection.ALL).size());
+        assertNull(repository.snapshot().file("Example.md"));
+        assertEquals(0, repository.search(Query.compile("filePath=Example.md"), Projection.ALL).size());
+        assertEquals(List.of("../../Example.md"),
+                repository.snapshot().file("Notes/Tasks/Task.md").getProperties().get("links"));
+    }
+
+    @Test
+    public void givenBaseReadingTags_whenRefreshing_renderBaseOnlyWhenTagsChange() throws IOException {
+        deleteDirectory(TEST_DIR);
+        copyDirectory(Paths.get(PKMS_EXAMPLES, "base"), TEST_DIR);
+        InMemoryFileRepository repository = new InMemoryFileRepository(TEST_DIR.toString());
+        PksFile main = repository.getAllPksFiles().get("main.md");
+        assertEquals(2, count((String) main.getProperties().get("content"), "#Tag"));
+
+        Path page = TEST_DIR.resolve("tag-page2.md");
+        Files.writeString(page, "---\ntitle: Page 2\ntags:\n  - Tag\n---\n");
+        Files.setLastModifiedTime(page, FileTime.fromMillis(Files.getLastModifiedTime(page).toMillis() + 2000));
+        repository.refresh(Set.of("tag-page2.md"));
+        assertSame(main, repository.getAllPksFiles().get("main.md"));
+
+        Files.writeString(page, "---\ntitle: Page 2\ntags:\n  - Other\n---\n");
+        Files.setLastModifiedTime(page, FileTime.fromMillis(Files.getLastModifiedTime(page).toMillis() + 4000));
+        repository.refresh(Set.of("tag-page2.md"));
+        PksFile rendered = repository.getAllPksFiles().get("main.md");
+        assertNotSame(main, rendered);
+        assertEquals(1, count((String) rendered.getProperties().get("content"), "#Tag"));
+        assertSameFiles(new InMemoryFileRepository(TEST_DIR.toString()).getAllPksFiles(), repository.getAllPksFiles());
+    }
+
+    @Test
+    public void givenBaseFailingOnOtherFile_whenOtherFileFixed_renderBase() throws IOException {
+        deleteDirectory(TEST_DIR);
+        copyDirectory(Paths.get(PKMS_EXAMPLES, "base"), TEST_DIR);
+        Path page = TEST_DIR.resolve("tag-page2.md");
+        // a map of tags can't be searched by the base, rendering it fails
+        Files.writeString(page, "---\ntags:\n  Tag: true\n---\n");
+        Path snapshot = SnapshotStore.defaultPath(TEST_DIR.toString());
+        InMemoryFileRepository repository = new InMemoryFileRepository(TEST_DIR.toString(), 1, snapshot);
+        assertEquals(0, count((String) repository.getAllPksFiles().get("main.md").getProperties().get("content"), "#Tag"));
+
+        Files.writeString(page, "---\ntags:\n  - Tag\n---\n");
+        Files.setLastModifiedTime(page, FileTime.fromMillis(Files.getLastModifiedTime(page).toMillis() + 2000));
+        Map<String, PksFile> loaded = new InMemoryFileRepository(TEST_DIR.toString(), 1, snapshot).getAllPksFiles();
+        assertEquals(2, count((String) loaded.get("main.md").getProperties().get("content"), "#Tag"));
+
+        Files.writeString(page, "---\ntags:\n  Tag: true\n---\n");
+        Files.setLastModifiedTime(page, FileTime.fromMillis(Files.getLastModifiedTime(page).toMillis() + 2000));
+        repository.refresh(Set.of("tag-page2.md"));
+        Files.writeString(page, "---\ntags:\n  - Tag\n---\n");
+        Files.setLastModifiedTime(page, FileTime.fromMillis(Files.getLastModifiedTime(page).toMillis() + 2000));
+        repository.refresh(Set.of("tag-page2.md"));
+        assertEquals(2, count((String) repository.getAllPksFiles().get("main.md").getProperties().get("content"), "#Tag"));
+    }
+
+    @Test
+    public void givenNumberFrontmatterKey_whenReading_indexOtherProperties() throws IOException {
+        Files.writeString(TEST_DIR.resolve("log.md"), "---\n2024: done\ntags:\n  - log\n---\n");
+        Path snapshot = SnapshotStore.defaultPath(TEST_DIR.toString());
+        InMemoryFileRepository repository = new InMemoryFileRepository(TEST_DIR.toString(), 1, snapshot);
+
+        assertEquals(Set.of("log.md"), repository.search(Query.compile("tags=log"), Projection.GRAPH).keySet());
+        // searches look properties up by name, a key that isn't text can't be searched for
+        assertTrue(repository.search(Query.compile("2024=done"), Projection.GRAPH).isEmpty());
+        assertSameFiles(repository.getAllPksFiles(),
+                new InMemoryFileRepository(TEST_DIR.toString(), 1, snapshot).getAllPksFiles());
+
+        Path log = TEST_DIR.resolve("log.md");
+        Files.writeString(log, "---\n2024: done\n2025: doing\ntags:\n  - log\n---\n");
+        Files.setLastModifiedTime(log, FileTime.fromMillis(Files.getLastModifiedTime(log).toMillis() + 2000));
+        repository.refresh(Set.of("log.md"));
+        assertEquals(Set.of("log.md"), repository.search(Query.compile("tags=log"), Projection.GRAPH).keySet());
+    }
+
+    // content is only a property once it's been transformed
+    private static int count(String text, String part) {
+        if (text == null) {
+            return 0;
+        }
+        return text.split(Pattern.quote(part), -1).length - 1;
+    }
+
+    private static void assertSameFiles(Map<String, PksFile> expected, Map<String, PksFile> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((filePath, pksFile) ->
+                assertEquals(pksFile.getProperties(), actual.get(filePath).getProperties(), filePath));
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.pskenny.repo;
+
+import io.github.pskenny.io.Projection;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultCacheTest {
+    private static final ResultCache.Key KEY = new ResultCache.Key("tags\0tag1\0", Projection.GRAPH, 1);
+
+    @Test
+    public void givenSameGeneration_whenGetting_renderOnce() throws IOException {
+        ResultCache cache = new ResultCache(10, 1024);
+        AtomicInteger renders = new AtomicInteger();
+
+        byte[] first = respond(cache, KEY, 1, "{}", renders);
+        byte[] second = respond(cache, KEY, 1, "{}", renders);
+
+        assertArrayEquals(first, second);
+        assertSame(cache.get(KEY, 1), cache.get(KEY, 1));
+        assertEquals(1, renders.get());
+    }
+
+    @Test
+    public void givenNewGeneration_whenGetting_renderAgain() throws IOException {
+        ResultCache cache = new ResultCache(10, 1024);
+        AtomicInteger renders = new AtomicInteger();
+
+        respond(cache, KEY, 1, "{}", renders);
+        respond(cache, KEY, 2, "{}", renders);
+        respond(cache, KEY, 2, "{}", renders);
+        assertEquals(2, renders.get());
+
+        // a response from before the update doesn't replace the new one
+        cache.put(KEY, 1, "{\"old\":1}".getBytes());
+        assertArrayEquals("{}".getBytes(), cache.get(KEY, 2));
+    }
+
+    @Test
+    public void givenLimits_whenFull_dropLeastRecentlyUsed() throws IOException {
+        ResultCache cache = new ResultCache(2, 1024);
+        AtomicInteger renders = new AtomicInteger();
+        ResultCache.Key other = new ResultCache.Key("other", Projection.GRAPH, 1);
+        ResultCache.Key another = new ResultCache.Key("another", Projection.WITHOUT_CONTENT, 1);
+
+        respond(cache, KEY, 1, "{}", renders);
+        respond(cache, other, 1, "{}", renders);
+        respond(cache, KEY, 1, "{}", renders);
+        respond(cache, another, 1, "{}", renders);
+        assertEquals(3, renders.get());
+
+        respond(cache, KEY, 1, "{}", renders);
+        assertEquals(3, renders.get());
+        respond(cache, other, 1, "{}", renders);
+        assertEquals(4, renders.get());
+
+        // too big to keep at all, the recorder stops keeping it and nothing is cached
+        byte[] big = respond(cache, KEY, 2, "x".repeat(2048), renders);
+        assertEquals(2048, big.length);
+        assertNull(cache.get(KEY, 2));
+        respond(cache, KEY, 2, "{}", renders);
+        assertEquals(6, renders.get());
+        assertNotNull(cache.get(KEY, 2));
+    }
+
+    @Test
+    public void givenResponse_whenRecording_writeThroughAndKeepUpToLimit() throws IOException {
+        ResultCache cache = new ResultCache(10, 4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ResultCache.Recorder small = cache.recorder(out);
+        small.write("{}".getBytes());
+        assertArrayEquals("{}".getBytes(), small.recorded());
+
+        ResultCache.Recorder big = cache.recorder(out);
+        big.write("{\"a\":1}".getBytes());
+        assertNull(big.recorded());
+        assertEquals("{}{\"a\":1}", out.toString());
+    }
+
+    // What the server does: the cached response if there is one, otherwise the response is streamed through a
+    // recorder and what it kept is cached. Returns the bytes the client got.
+    private static byte[] respond(ResultCache cache, ResultCache.Key key, long generation, String json,
+                                  AtomicInteger renders) throws IOException {
+        byte[] cached = cache.get(key, generation);
+        if (cached != null) {
+            return cached;
+        }
+        renders.incrementAndGet();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResultCache.Recorder recorder = cache.recorder(out);
+        recorder.write(json.getBytes());
+        byte[] recorded = recorder.recorded();
+        if (recorded != null) {
+            cache.put(key, generation, recorded);
+        }
+        return out.toByteArray();
+    }
+}
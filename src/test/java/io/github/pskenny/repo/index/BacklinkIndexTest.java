@@ -0,0 +1,56 @@
+package io.github.pskenny.repo.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BacklinkIndexTest {
+
+    @Test
+    public void givenLinks_whenLookingUp_returnSortedBacklinks() {
+        BacklinkIndex index = new BacklinkIndex();
+        index.setLinks(3, new int[]{1, 2, 2});
+        index.setLinks(0, new int[]{2});
+
+        assertArrayEquals(new int[]{1, 2}, index.links(3));
+        assertArrayEquals(new int[]{3}, index.backlinks(1));
+        assertArrayEquals(new int[]{0, 3}, index.backlinks(2));
+        assertArrayEquals(new int[0], index.backlinks(3));
+        assertArrayEquals(new int[0], index.backlinks(100));
+    }
+
+    @Test
+    public void givenChangedLinks_whenSetting_onlyChangeAddedAndDroppedBacklinks() {
+        BacklinkIndex index = new BacklinkIndex();
+        index.setLinks(0, new int[]{1, 2});
+        index.setLinks(3, new int[]{2});
+
+        index.setLinks(0, new int[]{2, 4});
+        assertArrayEquals(new int[0], index.backlinks(1));
+        assertArrayEquals(new int[]{0, 3}, index.backlinks(2));
+        assertArrayEquals(new int[]{0}, index.backlinks(4));
+
+        index.remove(0);
+        assertArrayEquals(new int[0], index.links(0));
+        assertArrayEquals(new int[]{3}, index.backlinks(2));
+        assertArrayEquals(new int[0], index.backlinks(4));
+    }
+
+    @Test
+    public void givenSnapshot_whenChangingLinks_keepSnapshotLinks() {
+        BacklinkIndex index = new BacklinkIndex();
+        index.setLinks(0, new int[]{1, 2});
+        index.setLinks(2000, new int[]{2});
+        BacklinkIndex snapshot = index.snapshot();
+
+        index.setLinks(0, new int[]{2, 3000});
+        index.remove(2000);
+
+        assertArrayEquals(new int[]{1, 2}, snapshot.links(0));
+        assertArrayEquals(new int[]{0, 2000}, snapshot.backlinks(2));
+        assertArrayEquals(new int[0], snapshot.backlinks(3000));
+        assertArrayEquals(new int[]{2, 3000}, index.links(0));
+        assertArrayEquals(new int[]{0}, index.backlinks(2));
+        assertThrows(IllegalStateException.class, () -> snapshot.setLinks(1, new int[]{0}));
+    }
+}
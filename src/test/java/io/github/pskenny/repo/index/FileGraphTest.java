@@ -0,0 +1,39 @@
+package io.github.pskenny.repo.index;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileGraphTest {
+    // 0 -> 1 -> 2 -> 3 and 0 -> 5 which isn't a file, 0 and 4 are tagged a, 3 is tagged b
+    private static final FileGraph GRAPH = new FileGraph.Builder(6)
+            .addFile(0, new int[]{1, 5})
+            .addFile(1, new int[]{0, 2})
+            .addFile(2, new int[]{1, 3})
+            .addFile(3, new int[]{2, 2})
+            .addFile(4, new int[0])
+            .addTag(RoaringBitmap.bitmapOf(0, 4))
+            .addTag(RoaringBitmap.bitmapOf(3))
+            .build();
+
+    @Test
+    public void givenDepth_whenWalking_followLinksThenTags() {
+        assertArrayEquals(new int[]{0}, GRAPH.neighbourhood(RoaringBitmap.bitmapOf(0), 1, 10).files());
+        assertArrayEquals(new int[]{0, 1, 4}, GRAPH.neighbourhood(RoaringBitmap.bitmapOf(0), 2, 10).files());
+        assertArrayEquals(new int[]{0, 1, 2, 4}, GRAPH.neighbourhood(RoaringBitmap.bitmapOf(0), 3, 10).files());
+        assertArrayEquals(new int[]{3, 2, 1}, GRAPH.neighbourhood(RoaringBitmap.bitmapOf(3), 3, 10).files());
+        assertArrayEquals(new int[]{3, 2, 1, 0, 4}, GRAPH.neighbourhood(RoaringBitmap.bitmapOf(3), 4, 10).files());
+    }
+
+    @Test
+    public void givenMaxNodes_whenWalking_keepNearestAndTruncate() {
+        FileGraph.Neighbourhood capped = GRAPH.neighbourhood(RoaringBitmap.bitmapOf(3), 4, 2);
+        assertArrayEquals(new int[]{3, 2}, capped.files());
+        assertTrue(capped.truncated());
+
+        FileGraph.Neighbourhood exact = GRAPH.neighbourhood(RoaringBitmap.bitmapOf(0), 2, 3);
+        assertArrayEquals(new int[]{0, 1, 4}, exact.files());
+        assertFalse(exact.truncated());
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.pskenny.repo.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PathRegistryTest {
+
+    @Test
+    public void givenPathsWrittenDifferently_whenCanonicalising_returnOnePath() {
+        assertEquals("Notes/a.md", PathRegistry.canonical("Notes/a.md"));
+        assertEquals("Notes/a.md", PathRegistry.canonical("/Notes/a.md"));
+        assertEquals("Notes/a.md", PathRegistry.canonical("./Notes//a.md"));
+        assertEquals("Resources/x.jpg", PathRegistry.canonical("Notes/../Resources/x.jpg"));
+        assertEquals("Notes", PathRegistry.canonical("Notes/"));
+        assertNull(PathRegistry.canonical("../outside.md"));
+    }
+
+    @Test
+    public void givenCanonicalPath_whenRegistering_keepOneId() {
+        PathRegistry registry = new PathRegistry();
+        int id = registry.register(PathRegistry.canonical("/a.md"));
+
+        assertEquals(id, registry.register("a.md"));
+        assertEquals("a.md", registry.path(id));
+        assertEquals(-1, registry.id("b.md"));
+    }
+}
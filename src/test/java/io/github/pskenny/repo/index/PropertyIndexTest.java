@@ -0,0 +1,180 @@
+package io.github.pskenny.repo.index;
+
+import io.github.pskenny.io.PksFile;
+import io.github.pskenny.io.Query;
+import io.github.pskenny.io.Search;
+import io.github.pskenny.repo.InMemoryFileRepository;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.time.Instant;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PropertyIndexTest {
+    private static final List<String> QUERIES = List.of(
+            "",
+            "tags=tag1",
+            "tags=tag1&tags=tag2",
+            "tags=tag1&!tags=tag2",
+            "!tags=tag1",
+            "tags",
+            "!tags",
+            "tags=tag*",
+            "tags=*2",
+            "tags=*",
+            "tags=t*&!tags=*1",
+            "title=File*",
+            "title=*1",
+            "summary=*end",
+            "summary=long*",
+            "content=*",
+            "status=done",
+            "status=do*",
+            "status=*ne",
+            "done=true",
+            "done=false",
+            "done=yes",
+            "priority=3",
+            "priority=>2",
+            "priority=<3",
+            "priority=<4.5&priority=>1",
+            "priority=4",
+            "priority=abc",
+            "score=>2.5",
+            "score=2.75",
+            "views=>10000000000",
+            "views=>1e9999999999",
+            "views=1e9999999999",
+            "created=>2025-01-01",
+            "created=<2025-01-01T12:00:00Z",
+            "created=2025-03-01",
+            "due=>2025-01-01",
+            "due=2025-06-30",
+            "ratings=>4",
+            "ratings=3",
+            "!priority=>2",
+            "filePath=notes/*",
+            "filePath=*.md&!status=done",
+            "title=File1",
+            "price=>20",
+            "price",
+            "links=Notes/Resolved Wikilink.md",
+            "missing=value",
+            "!missing=value");
+
+    private final PathRegistry pathRegistry = new PathRegistry();
+
+    @Test
+    public void givenFiles_whenSearching_matchSameFilesAsSearch() {
+        Map<String, PksFile> pksFiles = new HashMap<>();
+        addFile(pksFiles, "notes/a.md", Map.of("tags", List.of("tag1", "tag2"), "status", "done", "done", true, "priority", 3));
+        addFile(pksFiles, "notes/b.md", Map.of("tags", List.of("tag2", "other"), "status", "doing", "done", false, "priority", 1));
+        addFile(pksFiles, "c.md", Map.of("tags", new String[]{"tag1"}, "status", "none", "priority", 5));
+        addFile(pksFiles, "d.txt", Map.of("tags", "tag1", "done", "true"));
+        addFile(pksFiles, "e.md", Map.of("priority", "4", "status", List.of("done")));
+        addFile(pksFiles, "g.md", Map.of("score", 2.75, "views", 12_000_000_000L, "created", date("2025-03-01T00:00:00Z"),
+                "ratings", List.of(3, 5, "4.5"), "due", "2025-06-30"));
+        addFile(pksFiles, "h.md", Map.of("score", 1.5, "created", date("2024-12-31T23:00:00Z"), "ratings", List.of(1),
+                "due", "2024-06-30", "priority", 4L));
+        addFile(pksFiles, "f.md", Map.of("summary", "long " + "text ".repeat(100) + "end", "title", "File1"));
+        addFile(pksFiles, "i.md", Map.of("views", "1e9999999999", "priority", "-1e-9999999999"));
+
+        PropertyIndex index = index(pksFiles);
+
+        for (String query : QUERIES) {
+            assertEquals(scan(pksFiles, query), paths(index, query), query);
+        }
+    }
+
+    @Test
+    public void givenExampleNotes_whenSearching_matchSameFilesAsSearch() {
+        Map<String, PksFile> pksFiles = new InMemoryFileRepository("test/data/pkms-examples").getAllPksFiles();
+        PropertyIndex index = index(pksFiles);
+
+        for (String query : QUERIES) {
+            assertEquals(scan(pksFiles, query), paths(index, query), query);
+        }
+    }
+
+    @Test
+    public void givenChangedFile_whenAddingAgain_replaceOldValues() {
+        Map<String, PksFile> pksFiles = new HashMap<>();
+        addFile(pksFiles, "a.md", Map.of("tags", List.of("tag1"), "done", true));
+        PropertyIndex index = index(pksFiles);
+
+        addFile(pksFiles, "a.md", Map.of("tags", List.of("tag2")));
+        index.add("a.md", pksFiles.get("a.md").getProperties());
+
+        assertEquals(Set.of(), paths(index, "tags=tag1"));
+        assertEquals(Set.of(), paths(index, "done=true"));
+        assertEquals(Set.of("a.md"), paths(index, "tags=tag2"));
+        assertEquals(RoaringBitmap.bitmapOf(pathRegistry.id("a.md")), index.tags().files("tag2"));
+        assertEquals(1, index.tags().size());
+
+        index.remove("a.md");
+        assertEquals(Set.of(), paths(index, ""));
+        assertEquals(0, index.tags().size());
+    }
+
+    @Test
+    public void givenSnapshot_whenChangingIndex_searchSnapshotAsItWas() {
+        Map<String, PksFile> pksFiles = new HashMap<>();
+        addFile(pksFiles, "notes/a.md", Map.of("tags", List.of("tag1", "tag2"), "status", "done", "priority", 3));
+        addFile(pksFiles, "notes/b.md", Map.of("tags", List.of("tag2"), "done", false, "priority", 1));
+        addFile(pksFiles, "c.md", Map.of("tags", "tag1", "status", "none"));
+        PropertyIndex index = index(pksFiles);
+        index.search(Query.compile("priority=>2"));
+        PropertyIndex snapshot = index.snapshot();
+        Map<String, PksFile> snapshotFiles = new HashMap<>(pksFiles);
+
+        addFile(pksFiles, "notes/a.md", Map.of("tags", List.of("tag2", "other"), "priority", 5));
+        index.add("notes/a.md", pksFiles.get("notes/a.md").getProperties());
+        pksFiles.remove("notes/b.md");
+        index.remove("notes/b.md");
+        addFile(pksFiles, "d.md", Map.of("tags", List.of("tag1"), "done", true, "priority", 2));
+        index.add("d.md", pksFiles.get("d.md").getProperties());
+
+        for (String query : QUERIES) {
+            assertEquals(scan(snapshotFiles, query), paths(snapshot, query), query);
+            assertEquals(scan(pksFiles, query), paths(index, query), query);
+        }
+        assertEquals(2, snapshot.tags().size());
+        assertEquals(3, index.tags().size());
+        assertThrows(IllegalStateException.class, () -> snapshot.remove("c.md"));
+    }
+
+    private static Date date(String instant) {
+        return Date.from(Instant.parse(instant));
+    }
+
+    private static void addFile(Map<String, PksFile> pksFiles, String filePath, Map<String, Object> properties) {
+        pksFiles.put(filePath, new PksFile(filePath, new HashMap<>(properties)));
+    }
+
+    private PropertyIndex index(Map<String, PksFile> pksFiles) {
+        PropertyIndex index = new PropertyIndex(pathRegistry);
+        pathRegistry.registerAll(pksFiles.keySet());
+        pksFiles.forEach((filePath, pksFile) -> index.add(filePath, pksFile.getProperties()));
+        return index;
+    }
+
+    private static Set<String> scan(Map<String, PksFile> pksFiles, String query) {
+        Set<String> matched = new HashSet<>();
+        pksFiles.forEach((filePath, pksFile) -> {
+            if (Search.matchesProperties(pksFile, query)) {
+                matched.add(filePath);
+            }
+        });
+        return matched;
+    }
+
+    private Set<String> paths(PropertyIndex index, String query) {
+        Set<String> matched = new HashSet<>();
+        RoaringBitmap ids = index.search(Query.compile(query));
+        ids.forEach((int id) -> matched.add(pathRegistry.path(id)));
+        return matched;
+    }
+}